@@ -19,6 +19,10 @@ package javax.servlet;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.ResourceBundle;
 
 /**
  * 
@@ -45,6 +49,22 @@ import java.io.IOException;
 
 public abstract class ServletInputStream extends InputStream {
 
+    private static final String LSTRING_FILE = "javax.servlet.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // the initial and maximum number of bytes scanned at once by readLine
+    private static final int MIN_SCAN_SIZE = 128;
+    private static final int MAX_SCAN_SIZE = 8192;
+
+    /*
+     * Buffer used to copy data into direct ByteBuffers.  Allocated on
+     * first use.
+     */
+    private byte[] buffer;
+
 
 
     /**
@@ -67,6 +87,13 @@ public abstract class ServletInputStream extends InputStream {
      * <p>This method returns -1 if it reaches the end of the input
      * stream before reading the maximum number of bytes.
      *
+     * <p>The bytes buffered by the stream, as returned by
+     * {@link #peek}, are scanned for the newline in chunks and consumed
+     * in bulk with {@link #skip}; the leftover bytes past the newline
+     * stay buffered for the next read. When no bytes are buffered, the
+     * next byte is read with {@link #read()}. No byte past the newline
+     * is consumed, and any mark set by the caller is left alone.
+     *
      *
      *
      * @param b 		an array of bytes into which data is read
@@ -88,12 +115,36 @@ public abstract class ServletInputStream extends InputStream {
 	if (len <= 0) {
 	    return 0;
 	}
-	int count = 0, c;
+	int count = 0;
+	int scanSize = MIN_SCAN_SIZE;
 
-	while ((c = read()) != -1) {
-	    b[off++] = (byte)c;
-	    count++;
-	    if (c == '\n' || count == len) {
+	while (count < len) {
+	    int start = off + count;
+	    int n = peek(b, start, Math.min(len - count, scanSize));
+	    if (n > 0) {
+		int end = start + n;
+		int i = start;
+		while (i < end && b[i] != '\n') {
+		    i++;
+		}
+		int line = (i < end) ? i + 1 - start : n;
+		long skipped = skip(line);
+		if (skipped > 0) {
+		    count += (int) skipped;
+		    if (skipped == line && i < end) {
+			break;
+		    }
+		    // a long line: scan larger chunks
+		    scanSize = Math.min(2 * scanSize, MAX_SCAN_SIZE);
+		    continue;
+		}
+	    }
+	    int c = read();
+	    if (c == -1) {
+		break;
+	    }
+	    b[off + count++] = (byte) c;
+	    if (c == '\n') {
 		break;
 	    }
 	}
@@ -101,6 +152,193 @@ public abstract class ServletInputStream extends InputStream {
     }
 
 
+    /**
+     * Copies bytes that this stream has buffered into the given array,
+     * without consuming them: they are returned again by the next read,
+     * and can be consumed with {@link #skip}. Only bytes that can be
+     * read without blocking are copied. {@link #readLine} uses this
+     * method to scan lines in bulk.
+     *
+     * @implSpec
+     * The default implementation returns 0, so that
+     * <code>readLine</code> reads one byte at a time with
+     * {@link #read()}. Containers that buffer the request body should
+     * override this method, and {@link #skip} so that it consumes the
+     * bytes copied.
+     *
+     * @param b     the array into which the bytes are copied
+     *
+     * @param off   the offset in <code>b</code> at which the bytes are
+     *              copied
+     *
+     * @param len   the maximum number of bytes to copy
+     *
+     * @return      the number of bytes copied, which is 0 if none are
+     *              buffered
+     *
+     * @exception IOException	if an input or output exception has occurred
+     *
+     * @since Servlet 4.1
+     */
+    protected int peek(byte[] b, int off, int len) throws IOException {
+        return 0;
+    }
+
+
+    /**
+     * Reads bytes from the input stream into the given buffer, starting
+     * at its position. At most as many bytes as the buffer has remaining
+     * are read, and the position of the buffer is advanced by the number
+     * of bytes read.
+     *
+     * <p>Like the other read methods, this method blocks until some
+     * input is available, unless the stream is in non-blocking mode. In
+     * non-blocking mode it may only be called when {@link #isReady}
+     * returns <code>true</code>, typically from
+     * {@link ReadListener#onDataAvailable}, and then does not block:
+     *
+     * <pre>
+     * public void onDataAvailable() throws IOException {
+     *     while (in.isReady() &amp;&amp; in.read(buffer) != -1) {
+     *         ...
+     *     }
+     * }
+     * </pre>
+     *
+     * @implSpec
+     * The default implementation returns -1 without reading if
+     * {@link #isFinished} returns <code>true</code>. Otherwise, if the
+     * buffer is backed by an accessible array, the data is read into
+     * that array with {@link #read(byte[], int, int)}; for other
+     * buffers, such as direct buffers, it is read into a heap buffer
+     * which is reused by this stream, and copied into the buffer.
+     * Containers should override this method to read into a
+     * <code>ByteBuffer</code> directly.
+     *
+     * @param dst   the buffer into which the data is read
+     *
+     * @return      the number of bytes read, 0 if the buffer has no
+     *              remaining space, or -1 if the end of the stream
+     *              has been reached
+     *
+     * @exception IOException	if an input or output exception has occurred
+     *
+     * @throws NullPointerException if <code>dst</code> is null
+     *
+     * @since Servlet 4.1
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (isFinished()) {
+            return -1;
+        }
+        int n;
+        if (dst.hasArray()) {
+            n = read(dst.array(), dst.arrayOffset() + dst.position(),
+                     dst.remaining());
+            if (n > 0) {
+                dst.position(dst.position() + n);
+            }
+        } else {
+            byte[] buf = buffer;
+            if (buf == null) {
+                buf = new byte[BUFFER_SIZE];
+                buffer = buf;
+            }
+            n = read(buf, 0, Math.min(buf.length, dst.remaining()));
+            if (n > 0) {
+                dst.put(buf, 0, n);
+            }
+        }
+        return n;
+    }
+
+
+    /**
+     * Reads all the remaining bytes of the input stream, failing if
+     * there are more than <code>maxLength</code> of them.
+     *
+     * <p>The array holding the data is sized from
+     * <code>contentLength</code>, which is normally the value of
+     * {@link ServletRequest#getContentLengthLong}. When the announced
+     * number of bytes has been read and {@link #isFinished} returns
+     * <code>true</code>, that array is returned as is, without any
+     * further read or copy. If the content length is unknown the
+     * array is grown as data arrives.
+     *
+     * <p>This method blocks until all the data has been read, and so
+     * must not be called in non-blocking mode; use
+     * {@link #read(ByteBuffer)} from a {@link ReadListener} instead.
+     *
+     * @param contentLength the expected number of bytes, or -1 if it is
+     *                      not known
+     *
+     * @param maxLength     the maximum number of bytes to read
+     *
+     * @return              an array holding the bytes read
+     *
+     * @exception IOException	if an input or output exception has
+     *                          occurred, or if <code>contentLength</code>
+     *                          or the number of bytes in the stream
+     *                          exceeds <code>maxLength</code>
+     *
+     * @throws IllegalArgumentException if <code>maxLength</code> is negative
+     *
+     * @since Servlet 4.1
+     */
+    public byte[] readAllBytes(long contentLength, int maxLength)
+            throws IOException {
+        if (maxLength < 0) {
+            throw new IllegalArgumentException(
+                "Maximum length must not be negative");
+        }
+        if (contentLength > maxLength) {
+            throw tooLarge(maxLength);
+        }
+
+        byte[] buf = new byte[(contentLength >= 0)
+                              ? (int) contentLength
+                              : Math.min(maxLength, BUFFER_SIZE)];
+        int count = 0;
+        while (true) {
+            if (count == buf.length) {
+                if (isFinished()) {
+                    break;
+                }
+                if (count == maxLength) {
+                    if (read() == -1) {
+                        break;
+                    }
+                    throw tooLarge(maxLength);
+                }
+                buf = Arrays.copyOf(buf, (int) Math.min(maxLength,
+                    Math.max(2L * count, BUFFER_SIZE)));
+            }
+            int n = read(buf, count, buf.length - count);
+            if (n == -1) {
+                break;
+            }
+            count += n;
+        }
+        return (count == buf.length) ? buf : Arrays.copyOf(buf, count);
+    }
+
+
+    /*
+     * Creates the exception thrown when the input exceeds the maximum
+     * length allowed by readAllBytes.
+     */
+    private static IOException tooLarge(int maxLength) {
+        String errMsg = lStrings.getString("err.io.too_large");
+        Object[] errArgs = new Object[1];
+        errArgs[0] = String.valueOf(maxLength);
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new IOException(errMsg);
+    }
+
+
     /**
      * Returns true when all the data from the stream has been read else
      * it returns false.
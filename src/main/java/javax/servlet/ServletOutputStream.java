@@ -20,6 +20,8 @@ package javax.servlet;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.io.CharConversionException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
@@ -46,6 +48,21 @@ public abstract class ServletOutputStream extends OutputStream  {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    // the localized boolean values are looked up once
+    private static final String VALUE_TRUE = lStrings.getString("value.true");
+    private static final String VALUE_FALSE = lStrings.getString("value.false");
+
+    private static final int BUFFER_SIZE = 512;
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+
+    /*
+     * Buffer into which the print methods encode their output, so that
+     * it is handed to write(byte[], int, int) in bulk rather than one
+     * write(int) call per character.  Also used to copy the content of
+     * direct ByteBuffers and files.  Allocated on first use, and
+     * enlarged the first time a file is transferred.
+     */
+    private byte[] buffer;
 
     
     /**
@@ -62,6 +79,11 @@ public abstract class ServletOutputStream extends OutputStream  {
      * without a carriage return-line feed (CRLF) 
      * character at the end.
      *
+     * <p>The characters are encoded in bulk into a buffer that is
+     * reused by this stream, and passed to
+     * {@link #write(byte[], int, int)}. Containers that keep that array
+     * after the call returns, for example to complete a non-blocking
+     * write later, must copy its bytes or override this method.
      *
      * @param s                       the <code>String</code> to send to the client
      *
@@ -72,24 +94,99 @@ public abstract class ServletOutputStream extends OutputStream  {
     public void print(String s) throws IOException {
         if (s==null) s="null";
         int len = s.length();
-        for (int i = 0; i < len; i++) {
-            char c = s.charAt (i);
-
-            //
-            // XXX NOTE:  This is clearly incorrect for many strings,
-            // but is the only consistent approach within the current
-            // servlet framework.  It must suffice until servlet output
-            // streams properly encode their output.
-            //
-            if ((c & 0xff00) != 0) {        // high order byte must be zero
-                String errMsg = lStrings.getString("err.not_iso8859_1");
-                Object[] errArgs = new Object[1];
-                errArgs[0] = Character.valueOf(c);
-                errMsg = MessageFormat.format(errMsg, errArgs);
-                throw new CharConversionException(errMsg);
+        byte[] buf = getBuffer();
+        int start = 0;
+        while (start < len) {
+            int end = Math.min(len, start + buf.length);
+            for (int i = start; i < end; i++) {
+                char c = s.charAt (i);
+
+                //
+                // XXX NOTE:  This is clearly incorrect for many strings,
+                // but is the only consistent approach within the current
+                // servlet framework.  It must suffice until servlet output
+                // streams properly encode their output.
+                //
+                if ((c & 0xff00) != 0) {    // high order byte must be zero
+                    // the characters preceding this one are still written
+                    if (i > start) {
+                        write(buf, 0, i - start);
+                    }
+                    throw notIso8859_1(c);
+                }
+                buf[i - start] = (byte) c;
             }
-            write (c);
+            write(buf, 0, end - start);
+            start = end;
+        }
+    }
+
+
+    /*
+     * Creates the exception thrown when a character cannot be written
+     * as ISO 8859-1.
+     */
+    private static CharConversionException notIso8859_1(char c) {
+        String errMsg = lStrings.getString("err.not_iso8859_1");
+        Object[] errArgs = new Object[1];
+        errArgs[0] = Character.valueOf(c);
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new CharConversionException(errMsg);
+    }
+
+
+    /*
+     * Writes the decimal representation of a long value, as produced by
+     * String.valueOf(long), without creating a String.  The digits are
+     * generated from the end of the buffer; the value is kept negative
+     * while doing so, so that Long.MIN_VALUE needs no special case.
+     */
+    private void printDecimal(long l) throws IOException {
+        byte[] buf = getBuffer();
+        int pos = buf.length;
+        long q = (l < 0) ? l : -l;
+        do {
+            buf[--pos] = (byte) ('0' - (int) (q % 10));
+            q /= 10;
+        } while (q != 0);
+        if (l < 0) {
+            buf[--pos] = '-';
         }
+        write(buf, pos, buf.length - pos);
+    }
+
+
+    /*
+     * Returns the buffer used by the print and write(ByteBuffer) methods,
+     * allocating it if necessary.
+     */
+    private byte[] getBuffer() {
+        return getBuffer(BUFFER_SIZE);
+    }
+
+
+    /*
+     * Returns a heap buffer of at least the given size, to copy bytes to
+     * before a single write: the reused buffer if the size is not larger
+     * than TRANSFER_BUFFER_SIZE, or else a new array, which is not kept.
+     */
+    private byte[] copyBuffer(int size) {
+        return (size <= TRANSFER_BUFFER_SIZE)
+            ? getBuffer(Math.max(size, BUFFER_SIZE)) : new byte[size];
+    }
+
+
+    /*
+     * Returns the buffer of this stream, allocating or enlarging it if
+     * it is not at least the given size.
+     */
+    private byte[] getBuffer(int size) {
+        byte[] buf = buffer;
+        if (buf == null || buf.length < size) {
+            buf = new byte[size];
+            buffer = buf;
+        }
+        return buf;
     }
 
 
@@ -107,13 +204,7 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(boolean b) throws IOException {
-        String msg;
-        if (b) {
-            msg = lStrings.getString("value.true");
-        } else {
-            msg = lStrings.getString("value.false");
-        }
-        print(msg);
+        print(b ? VALUE_TRUE : VALUE_FALSE);
     }
 
 
@@ -123,6 +214,10 @@ public abstract class ServletOutputStream extends OutputStream  {
      * with no carriage return-line feed (CRLF) 
      * at the end.
      *
+     * <p>The character is checked and passed to {@link #write(int)}
+     * directly, so a subclass overriding {@link #print(String)} must
+     * also override this method to handle characters the same way.
+     *
      * @param c                       the character to send to the client
      *
      * @exception IOException         if an input or output exception occurred
@@ -130,7 +225,10 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(char c) throws IOException {
-        print(String.valueOf(c));
+        if ((c & 0xff00) != 0) {        // high order byte must be zero
+            throw notIso8859_1(c);
+        }
+        write(c);
     }
 
 
@@ -142,6 +240,11 @@ public abstract class ServletOutputStream extends OutputStream  {
      * with no carriage return-line feed (CRLF) 
      * at the end.
      *
+     * <p>The digits are written from the buffer used by
+     * {@link #print(String)}, without going through that method, and
+     * the same rules apply to containers keeping the array passed to
+     * {@link #write(byte[], int, int)}.
+     *
      * @param i                       the int to send to the client
      *
      * @exception IOException         if an input or output exception occurred
@@ -149,7 +252,7 @@ public abstract class ServletOutputStream extends OutputStream  {
      */  
 
     public void print(int i) throws IOException {
-        print(String.valueOf(i));
+        printDecimal(i);
     }
 
 
@@ -160,6 +263,9 @@ public abstract class ServletOutputStream extends OutputStream  {
      * Writes a <code>long</code> value to the client,
      * with no carriage return-line feed (CRLF) at the end.
      *
+     * <p>Like {@link #print(int)}, this method does not go through
+     * {@link #print(String)}.
+     *
      * @param l                       the <code>long</code> value 
      *                                to send to the client
      *
@@ -169,7 +275,7 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(long l) throws IOException {
-        print(String.valueOf(l));
+        printDecimal(l);
     }
 
 
@@ -362,6 +468,197 @@ public abstract class ServletOutputStream extends OutputStream  {
         println();
     }
 
+    /**
+     * Writes the remaining bytes of the given buffer to the client.
+     * When this method returns, the position of the buffer is equal
+     * to its limit.
+     *
+     * <p>Like the other write methods, in non-blocking mode this
+     * method may only be called when {@link #isReady} returns
+     * <code>true</code>; the container then accepts all remaining
+     * bytes of the buffer, and invokes
+     * {@link WriteListener#onWritePossible} once it is possible to
+     * write again.
+     *
+     * @implSpec
+     * The default implementation makes a single call of
+     * {@link #write(byte[], int, int)}, so that it may be used in
+     * non-blocking mode. If the buffer is backed by an accessible array,
+     * the remaining bytes are passed without copying them. Otherwise,
+     * for example for a direct buffer, they are copied to a heap buffer
+     * holding all of them, which is reused by this stream if it is
+     * small. Containers that can write a <code>ByteBuffer</code> to the
+     * underlying connection directly should override this method.
+     * Containers that keep the array passed to
+     * {@link #write(byte[], int, int)} after that method returns, for
+     * example to complete a non-blocking write later, must copy its
+     * bytes or override this method, since a reused heap buffer is
+     * overwritten by the next write of this stream.
+     *
+     * @param src   the buffer holding the bytes to send to the client
+     *
+     * @exception IOException         if an input or output exception occurred
+     *
+     * @throws NullPointerException if <code>src</code> is null
+     *
+     * @since Servlet 4.1
+     */
+    public void write(ByteBuffer src) throws IOException {
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(),
+                  src.remaining());
+            src.position(src.limit());
+        } else if (src.hasRemaining()) {
+            int len = src.remaining();
+            byte[] buf = copyBuffer(len);
+            src.get(buf, 0, len);
+            write(buf, 0, len);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of each of the given buffers to the
+     * client, in the order in which the buffers are given. When this
+     * method returns, the position of each buffer is equal to its limit.
+     *
+     * <p>The same rules as for {@link #write(ByteBuffer)} apply in
+     * non-blocking mode: this method may only be called when
+     * {@link #isReady} returns <code>true</code>, and the container
+     * accepts all the remaining bytes.
+     *
+     * @implSpec
+     * The default implementation makes a single call of
+     * {@link #write(ByteBuffer)}, if only one of the buffers has
+     * remaining bytes, or of {@link #write(byte[], int, int)}, after
+     * copying the remaining bytes of all the buffers to a heap buffer,
+     * which is reused by this stream if it is small, as described for
+     * {@link #write(ByteBuffer)}. Containers that support gathering
+     * writes to the underlying connection should override this method.
+     *
+     * @param srcs  the buffers holding the bytes to send to the client
+     *
+     * @return the number of bytes written
+     *
+     * @exception IOException         if an input or output exception occurred
+     *
+     * @throws NullPointerException if <code>srcs</code> or any of
+     *  its elements is null
+     *
+     * @since Servlet 4.1
+     */
+    public long write(ByteBuffer... srcs) throws IOException {
+        long written = 0;
+        ByteBuffer last = null;
+        int nonEmpty = 0;
+        for (ByteBuffer src : srcs) {
+            if (src.hasRemaining()) {
+                written += src.remaining();
+                last = src;
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty <= 1) {
+            if (last != null) {
+                write(last);
+            }
+            return written;
+        }
+        if (written > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(
+                "Buffers too large to be written at once");
+        }
+        byte[] buf = copyBuffer((int) written);
+        int len = 0;
+        for (ByteBuffer src : srcs) {
+            int n = src.remaining();
+            src.get(buf, len, n);
+            len += n;
+        }
+        write(buf, 0, len);
+        return written;
+    }
+
+    /**
+     * Writes up to <code>count</code> bytes of the given file to the
+     * client, starting at the given position in the file, and returns
+     * the number of bytes written. Fewer bytes than <code>count</code>
+     * may be written, so callers must call this method until all the
+     * bytes they want to send have been written; no bytes are written
+     * only if <code>count</code> is 0 or the end of the file has been
+     * reached. The position of the channel is not changed, so a channel
+     * may be shared by concurrent requests.
+     *
+     * <p>Together with its return value, this method can be used to
+     * send a range of a file, as well as to send a file in non-blocking
+     * mode. Like the other write methods, in non-blocking mode it may
+     * only be called when {@link #isReady} returns <code>true</code>,
+     * and the container accepts all the bytes transferred by the call;
+     * a {@link WriteListener} should therefore call it once for each
+     * time {@link #isReady} returns <code>true</code>, for example:
+     *
+     * <pre>
+     * public void onWritePossible() throws IOException {
+     *     while (out.isReady()) {
+     *         if (position == end) {
+     *             asyncContext.complete();
+     *             return;
+     *         }
+     *         position += out.transferFrom(channel, position,
+     *                                      end - position);
+     *     }
+     * }
+     * </pre>
+     *
+     * @implSpec
+     * The default implementation reads up to 8 KiB of the file into a
+     * heap buffer, which is reused by this stream, and passes them to a
+     * single call of {@link #write(byte[], int, int)}, so that it may be
+     * used in non-blocking mode; the rules given for
+     * {@link #write(ByteBuffer)} apply to containers that keep that
+     * array. Containers should override this method to transfer the
+     * file to the underlying connection directly, for example with
+     * {@link FileChannel#transferTo}.
+     *
+     * @param channel   the channel of the file to send to the client
+     *
+     * @param position  the position in the file of the first byte to send
+     *
+     * @param count     the maximum number of bytes to send
+     *
+     * @return the number of bytes written, which may be less than
+     *  <code>count</code>, and is 0 only if <code>count</code> is 0 or
+     *  <code>position</code> is not less than the size of the file
+     *
+     * @exception IOException         if an input or output exception occurred
+     *
+     * @throws IllegalArgumentException if <code>position</code> or
+     *  <code>count</code> is negative
+     *
+     * @throws NullPointerException if <code>channel</code> is null
+     *
+     * @since Servlet 4.1
+     */
+    public long transferFrom(FileChannel channel, long position, long count)
+            throws IOException {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException(
+                "Position and count must not be negative");
+        }
+        byte[] buf = getBuffer(TRANSFER_BUFFER_SIZE);
+        ByteBuffer dst = ByteBuffer.wrap(buf, 0,
+            (int) Math.min(TRANSFER_BUFFER_SIZE, count));
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                break;
+            }
+        }
+        int len = dst.position();
+        if (len > 0) {
+            write(buf, 0, len);
+        }
+        return len;
+    }
+
     /**
      * This method can be used to determine if data can be written without blocking.
      *
@@ -37,6 +37,41 @@ import java.util.Map;
 
 public class ServletRequestWrapper implements ServletRequest {
 
+    /*
+     * The frequently called methods that a wrapper passes through without
+     * doing anything itself, unless its class overrides them.  Calls of
+     * these methods skip the wrappers that pass them through, and go
+     * straight to the innermost request that implements them.
+     */
+    private static final int GET_ATTRIBUTE = 0;
+    private static final int GET_PARAMETER = 1;
+    private static final int GET_PARAMETER_VALUES = 2;
+
+    /*
+     * For each wrapper class, a bit mask of the methods above that the
+     * class passes through, that is, does not override.
+     */
+    private static final ClassValue<Integer> PASS_THROUGH =
+        new ClassValue<Integer>() {
+            @Override
+            protected Integer computeValue(Class<?> type) {
+                int mask = 0;
+                if (!overrides(type, ServletRequestWrapper.class,
+                               "getAttribute", String.class)) {
+                    mask |= 1 << GET_ATTRIBUTE;
+                }
+                if (!overrides(type, ServletRequestWrapper.class,
+                               "getParameter", String.class)) {
+                    mask |= 1 << GET_PARAMETER;
+                }
+                if (!overrides(type, ServletRequestWrapper.class,
+                               "getParameterValues", String.class)) {
+                    mask |= 1 << GET_PARAMETER_VALUES;
+                }
+                return mask;
+            }
+        };
+
     private ServletRequest request;
 
     /**
@@ -84,7 +119,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * on the wrapped request object.
      */
     public Object getAttribute(String name) {
-        return this.request.getAttribute(name);
+        return getTarget(GET_ATTRIBUTE).getAttribute(name);
     }
 
 
@@ -158,7 +193,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * getParameter(String name) on the wrapped request object.
      */
     public String getParameter(String name) {
-        return this.request.getParameter(name);
+        return getTarget(GET_PARAMETER).getParameter(name);
     }
 
 
@@ -185,7 +220,7 @@ public class ServletRequestWrapper implements ServletRequest {
      * getParameterValues(String name) on the wrapped request object.
      */
     public String[] getParameterValues(String name) {
-        return this.request.getParameterValues(name);
+        return getTarget(GET_PARAMETER_VALUES).getParameterValues(name);
     }
 
 
@@ -540,6 +575,28 @@ public class ServletRequestWrapper implements ServletRequest {
     }
 
 
+    /**
+     * Returns the request of the given class type that this
+     * ServletRequestWrapper wraps, directly or through other wrappers.
+     *
+     * @param <T> the type of the request to search for
+     *
+     * @param wrappedType the ServletRequest class type to search for
+     *
+     * @return the outermost wrapped request of the given type, or
+     * <code>null</code> if this ServletRequestWrapper does not wrap a
+     * ServletRequest of the given type
+     *
+     * @throws IllegalArgumentException if the given class does not
+     * implement {@link ServletRequest}
+     *
+     * @since Servlet 4.1
+     */
+    public <T> T unwrap(Class<T> wrappedType) {
+        return Wrappers.unwrap(request, wrappedType, ServletRequest.class);
+    }
+
+
     /**
      * Gets the dispatcher type of the wrapped request.
      *
@@ -554,5 +611,38 @@ public class ServletRequestWrapper implements ServletRequest {
     }
 
 
+    /*
+     * Returns the request that calls of the given pass-through method are
+     * to be made on: the innermost request, starting with the wrapped
+     * request, that is not a wrapper passing the method through.
+     */
+    private ServletRequest getTarget(int method) {
+        ServletRequest r = request;
+        while (r instanceof ServletRequestWrapper
+                && (PASS_THROUGH.get(r.getClass()) & (1 << method)) != 0) {
+            r = ((ServletRequestWrapper) r).request;
+        }
+        return r;
+    }
+
+
+    /*
+     * Tests whether the given class, or any of its superclasses below the
+     * given base class, declares the given method.
+     */
+    private static boolean overrides(Class<?> type, Class<?> base, String name,
+                             Class<?>... parameterTypes) {
+        for (Class<?> c = type; c != null && c != base;
+                c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look further up
+            } catch (SecurityException e) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
-
@@ -36,7 +36,9 @@ import java.util.Locale;
 
  
 public class ServletResponseWrapper implements ServletResponse {
+
 	private ServletResponse response;
+
 	/**
 	* Creates a ServletResponse adaptor wrapping the given response object.
 	* @throws java.lang.IllegalArgumentException if the response is null.
@@ -276,9 +278,25 @@ public class ServletResponseWrapper implements ServletResponse {
         }
     }
 
-}
-
-
-
-
 
+    /**
+     * Returns the response of the given class type that this
+     * ServletResponseWrapper wraps, directly or through other wrappers.
+     *
+     * @param <T> the type of the response to search for
+     *
+     * @param wrappedType the ServletResponse class type to search for
+     *
+     * @return the outermost wrapped response of the given type, or
+     * <code>null</code> if this ServletResponseWrapper does not wrap a
+     * ServletResponse of the given type
+     *
+     * @throws IllegalArgumentException if the given class does not
+     * implement {@link ServletResponse}
+     *
+     * @since Servlet 4.1
+     */
+    public <T> T unwrap(Class<T> wrappedType) {
+        return Wrappers.unwrap(response, wrappedType, ServletResponse.class);
+    }
+}
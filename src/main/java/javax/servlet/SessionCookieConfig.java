@@ -319,4 +319,38 @@ public interface SessionCookieConfig {
      * @see javax.servlet.http.Cookie#getMaxAge
      */
     public int getMaxAge();
+
+
+    /**
+     * Gets the precompiled <code>Set-Cookie</code> header for any session
+     * tracking cookies created on behalf of the application represented
+     * by the <tt>ServletContext</tt> from which this
+     * <tt>SessionCookieConfig</tt> was acquired.
+     *
+     * <p>Containers should create the template once, after the
+     * <tt>ServletContext</tt> has been initialized, and return the same
+     * instance from then on.
+     *
+     * @implSpec
+     * The default implementation returns a new template created from the
+     * current state of this <tt>SessionCookieConfig</tt> on every call,
+     * since an interface cannot keep it; callers must therefore keep the
+     * returned template instead of calling this method for each session.
+     *
+     * @param contextPath the context path of the <tt>ServletContext</tt>
+     * from which this <tt>SessionCookieConfig</tt> was acquired, used as
+     * the cookie path if {@link #setPath} was never called
+     *
+     * @return the session cookie template
+     *
+     * @throws IllegalArgumentException if the name of the cookie is not
+     * a token, or if its domain or path contains control characters or
+     * semicolons
+     *
+     * @since Servlet 4.1
+     */
+    default public SessionCookieTemplate getSessionCookieTemplate(
+            String contextPath) {
+        return new SessionCookieTemplate(this, contextPath);
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import javax.servlet.http.HttpTokens;
+
+/**
+ * An immutable, precompiled <code>Set-Cookie</code> header for session
+ * tracking cookies, built from a {@link SessionCookieConfig}.
+ *
+ * <p>Everything in the header but the session id is rendered when the
+ * template is created, as a prefix holding the cookie name and a suffix
+ * holding the attributes, so that issuing a session cookie only splices
+ * the id of the new session in between. The header follows RFC 6265,
+ * as rendered by <code>javax.servlet.http.Cookie#toSetCookieHeader</code>:
+ * the comment of the configuration is not sent, and a maximum age of
+ * zero is also sent as an <i>Expires</i> date in the past.
+ *
+ * <p>Since the configuration cannot change once the
+ * <tt>ServletContext</tt> has been initialized, containers are expected
+ * to create the template once, after the context has been initialized,
+ * and to use it for every new session.
+ *
+ * @see SessionCookieConfig#getSessionCookieTemplate
+ *
+ * @since Servlet 4.1
+ */
+public final class SessionCookieTemplate {
+
+    private static final String LSTRING_FILE = "javax.servlet.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // the name of the cookie if the configuration gives none
+    private static final String DEFAULT_NAME = "JSESSIONID";
+
+    private static final String EPOCH = "Thu, 01 Jan 1970 00:00:00 GMT";
+
+    private final String name;
+    private final String prefix;
+    private final String suffix;
+    private final byte[] prefixBytes;
+    private final byte[] suffixBytes;
+
+    /**
+     * Creates a template from the given configuration.
+     *
+     * @param config      the session cookie configuration
+     *
+     * @param contextPath the context path of the <tt>ServletContext</tt>
+     *                    the configuration belongs to, used as the path of
+     *                    the cookie if the configuration sets none
+     *
+     * @throws IllegalArgumentException if the cookie name is not a token,
+     * or if the domain or path contains control characters or semicolons
+     */
+    public SessionCookieTemplate(SessionCookieConfig config,
+                                 String contextPath) {
+        String name = config.getName();
+        if (name == null || name.isEmpty()) {
+            name = DEFAULT_NAME;
+        } else if (!HttpTokens.isToken(name)) {
+            throw invalid("err.cookie_name_invalid", name, null);
+        }
+        String path = config.getPath();
+        if (path == null) {
+            path = (contextPath == null || contextPath.isEmpty())
+                ? "/" : contextPath;
+        }
+
+        StringBuilder sb = new StringBuilder(64);
+        int maxAge = config.getMaxAge();
+        if (maxAge >= 0) {
+            sb.append("; Max-Age=").append(maxAge);
+            if (maxAge == 0) {
+                sb.append("; Expires=").append(EPOCH);
+            }
+        }
+        String domain = config.getDomain();
+        if (domain != null) {
+            checkAttribute(name, domain);
+            sb.append("; Domain=").append(domain);
+        }
+        checkAttribute(name, path);
+        sb.append("; Path=").append(path);
+        if (config.isSecure()) {
+            sb.append("; Secure");
+        }
+        if (config.isHttpOnly()) {
+            sb.append("; HttpOnly");
+        }
+
+        this.name = name;
+        this.prefix = name + '=';
+        this.suffix = sb.toString();
+        this.prefixBytes = prefix.getBytes(StandardCharsets.ISO_8859_1);
+        this.suffixBytes = suffix.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns the name of the session tracking cookie.
+     *
+     * @return the name of the cookie
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the length, in characters and in bytes, of the header for
+     * a session id of the given length.
+     *
+     * @param sessionIdLength the length of the session id
+     *
+     * @return the length of the header value
+     */
+    public int getHeaderLength(int sessionIdLength) {
+        return prefixBytes.length + sessionIdLength + suffixBytes.length;
+    }
+
+    /**
+     * Returns the value of the <code>Set-Cookie</code> header for the
+     * given session id.
+     *
+     * @param sessionId the id of the session
+     *
+     * @return the value of the header
+     *
+     * @throws IllegalArgumentException if the session id contains
+     * characters that are not allowed in a cookie value
+     */
+    public String toSetCookieHeader(String sessionId) {
+        checkSessionId(sessionId);
+        return new StringBuilder(getHeaderLength(sessionId.length()))
+            .append(prefix).append(sessionId).append(suffix).toString();
+    }
+
+    /**
+     * Writes the value of the <code>Set-Cookie</code> header for the
+     * given session id, encoded as ISO-8859-1, to the given buffer.
+     *
+     * @param sessionId the id of the session
+     *
+     * @param out       the buffer to write to, which must have at least
+     *                  {@link #getHeaderLength} bytes remaining
+     *
+     * @throws IllegalArgumentException if the session id contains
+     * characters that are not allowed in a cookie value
+     *
+     * @throws java.nio.BufferOverflowException if the buffer does not
+     * have enough space remaining
+     */
+    public void writeSetCookieHeader(String sessionId, ByteBuffer out) {
+        checkSessionId(sessionId);
+        out.put(prefixBytes);
+        for (int i = 0; i < sessionId.length(); i++) {
+            out.put((byte) sessionId.charAt(i));
+        }
+        out.put(suffixBytes);
+    }
+
+    /*
+     * A session id is spliced in as the value of the cookie, so it must
+     * consist of the cookie-octets of RFC 6265.
+     */
+    private void checkSessionId(String sessionId) {
+        for (int i = 0; i < sessionId.length(); i++) {
+            if (!HttpTokens.isCookieOctet(sessionId.charAt(i))) {
+                throw invalid("err.session_id_invalid", name, sessionId);
+            }
+        }
+    }
+
+    private static void checkAttribute(String name, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!HttpTokens.isCookieAttributeChar(value.charAt(i))) {
+                throw invalid("err.cookie_attribute_invalid", name, value);
+            }
+        }
+    }
+
+    private static IllegalArgumentException invalid(String key, String name,
+                                                    String value) {
+        String errMsg = lStrings.getString(key);
+        Object[] errArgs = new Object[2];
+        errArgs[0] = name;
+        errArgs[1] = value;
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new IllegalArgumentException(errMsg);
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+
+/**
+ * A response wrapper that captures the body written to it, for filters
+ * that need to inspect or transform a response body before sending it,
+ * such as filters computing entity-tags or signatures.
+ *
+ * <p>The body is held in a chain of fixed-size chunks taken from a pool
+ * shared by all wrappers, so it is not copied as it grows. Past a
+ * memory threshold, the rest of the body is spilled to a temporary file.
+ * The captured body can be written to the wrapped response, or to any
+ * other response, with {@link #writeTo}; the part held in the file is
+ * sent with {@link ServletOutputStream#transferFrom}, which containers
+ * can implement without copying it to the heap.
+ *
+ * <p>Both {@link #getOutputStream} and {@link #getWriter} are supported,
+ * with the usual restriction that only one of them may be used. The
+ * writer encodes characters in the character encoding of the response
+ * at the time it is first requested, as a container's writer does.
+ *
+ * <p>Nothing is written to the wrapped response until the captured body
+ * is written to it, and the content length set by the application,
+ * with <code>setContentLength</code>, <code>setContentLengthLong</code>
+ * or as a <code>Content-Length</code> header, is ignored, since the
+ * captured body may be changed before it is sent; {@link #writeTo} sets
+ * the content length of the body it writes. Since writing the captured
+ * body blocks, the output stream does not support non-blocking mode. When the captured body is no longer
+ * needed, {@link #release} must be called, so that the chunks are
+ * returned to the pool and any temporary file is deleted.
+ *
+ * <pre>
+ *    CapturingHttpServletResponseWrapper capture =
+ *        new CapturingHttpServletResponseWrapper(response);
+ *    try {
+ *        chain.doFilter(request, capture);
+ *        ...
+ *        capture.writeTo(response);
+ *    } finally {
+ *        capture.release();
+ *    }
+ * </pre>
+ *
+ * @since Servlet 4.1
+ */
+public class CapturingHttpServletResponseWrapper
+        extends HttpServletResponseWrapper {
+
+    /**
+     * The number of bytes of a captured body kept in memory by default,
+     * one megabyte.
+     */
+    public static final long DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private final ChunkedBuffer buffer;
+    private final CapturingOutputStream outputStream;
+    private ResettablePrintWriter writer;
+    private boolean usingOutputStream;
+
+    /**
+     * Constructs a wrapper capturing the body written to the given
+     * response, keeping up to {@link #DEFAULT_MEMORY_THRESHOLD} bytes in
+     * memory.
+     *
+     * @param response the response to wrap
+     *
+     * @throws IllegalArgumentException if the response is null
+     */
+    public CapturingHttpServletResponseWrapper(HttpServletResponse response) {
+        this(response, DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Constructs a wrapper capturing the body written to the given
+     * response, keeping about the given number of bytes in memory.
+     *
+     * @param response        the response to wrap
+     *
+     * @param memoryThreshold the number of bytes kept in memory before
+     *                        the body is spilled to a temporary file, or
+     *                        -1 to keep the whole body in memory
+     *
+     * @throws IllegalArgumentException if the response is null
+     */
+    public CapturingHttpServletResponseWrapper(HttpServletResponse response,
+                                               long memoryThreshold) {
+        super(response);
+        this.buffer = new ChunkedBuffer(memoryThreshold);
+        this.outputStream = new CapturingOutputStream();
+    }
+
+    /**
+     * Returns a stream that captures the bytes written to it.
+     *
+     * @return the capturing output stream
+     *
+     * @throws IllegalStateException if {@link #getWriter} has been called
+     */
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (writer != null) {
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.getOutputStream"));
+        }
+        usingOutputStream = true;
+        return outputStream;
+    }
+
+    /**
+     * Returns a writer that captures the characters written to it,
+     * encoded in the character encoding of this response.
+     *
+     * @return the capturing writer
+     *
+     * @throws UnsupportedEncodingException if the character encoding of
+     * this response is not supported
+     *
+     * @throws IllegalStateException if {@link #getOutputStream} has been
+     * called
+     */
+    @Override
+    public PrintWriter getWriter() throws UnsupportedEncodingException {
+        if (usingOutputStream) {
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.getWriter"));
+        }
+        if (writer == null) {
+            writer = new ResettablePrintWriter(outputStream,
+                                               getCharacterEncoding());
+        }
+        return writer;
+    }
+
+    /**
+     * Ignored, as the captured body may be changed before it is sent.
+     *
+     * @param len ignored
+     */
+    @Override
+    public void setContentLength(int len) {
+    }
+
+    /**
+     * Ignored, as the captured body may be changed before it is sent.
+     *
+     * @param len ignored
+     */
+    @Override
+    public void setContentLengthLong(long len) {
+    }
+
+    /**
+     * Sets a header of the wrapped response, unless it is
+     * <code>Content-Length</code>, which is ignored, as the captured body
+     * may be changed before it is sent.
+     *
+     * @param name  the name of the header
+     *
+     * @param value the value of the header
+     */
+    @Override
+    public void setHeader(String name, String value) {
+        if (!HeaderName.CONTENT_LENGTH.matches(name)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    /**
+     * Adds a header to the wrapped response, unless it is
+     * <code>Content-Length</code>, which is ignored, as the captured body
+     * may be changed before it is sent.
+     *
+     * @param name  the name of the header
+     *
+     * @param value the value of the header
+     */
+    @Override
+    public void addHeader(String name, String value) {
+        if (!HeaderName.CONTENT_LENGTH.matches(name)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    /**
+     * Sets an integer header of the wrapped response, unless it is
+     * <code>Content-Length</code>, which is ignored, as the captured body
+     * may be changed before it is sent.
+     *
+     * @param name  the name of the header
+     *
+     * @param value the value of the header
+     */
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!HeaderName.CONTENT_LENGTH.matches(name)) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    /**
+     * Adds an integer header to the wrapped response, unless it is
+     * <code>Content-Length</code>, which is ignored, as the captured body
+     * may be changed before it is sent.
+     *
+     * @param name  the name of the header
+     *
+     * @param value the value of the header
+     */
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!HeaderName.CONTENT_LENGTH.matches(name)) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /**
+     * Flushes the writer, if any, into the captured body. The wrapped
+     * response is neither flushed nor committed.
+     */
+    @Override
+    public void flushBuffer() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Discards the captured body. Headers and status are kept.
+     */
+    @Override
+    public void resetBuffer() {
+        discard();
+    }
+
+    /**
+     * Resets the wrapped response and discards the captured body. As
+     * with a container's response, either {@link #getOutputStream} or
+     * {@link #getWriter} may be called afterwards, whichever was used
+     * before.
+     *
+     * @throws IllegalStateException if the wrapped response has already
+     * been committed
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        discard();
+        writer = null;
+        usingOutputStream = false;
+    }
+
+    /**
+     * Returns the length of the captured body, in bytes.
+     *
+     * @return the length of the captured body
+     */
+    public long getCapturedLength() {
+        flushBuffer();
+        return buffer.size();
+    }
+
+    /**
+     * Returns a copy of the captured body.
+     *
+     * @return the captured body
+     *
+     * @throws IOException if the part of the body held in a temporary
+     * file cannot be read
+     */
+    public byte[] getCapturedBytes() throws IOException {
+        flushBuffer();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes the captured body to the output stream of the given
+     * response. If the response has not been committed, its content
+     * length is set to the length of the captured body first.
+     *
+     * @param response the response to write the captured body to, which
+     * is usually the wrapped response
+     *
+     * @throws IOException if an input or output exception occurred
+     */
+    public void writeTo(ServletResponse response) throws IOException {
+        flushBuffer();
+        if (!response.isCommitted()) {
+            response.setContentLengthLong(buffer.size());
+        }
+        buffer.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * Discards the captured body, returning the memory it used to the
+     * pool and deleting its temporary file, if any. The wrapper may still
+     * be written to afterwards.
+     *
+     * @throws IOException if the temporary file cannot be closed
+     */
+    public void release() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        buffer.release();
+    }
+
+    private void discard() {
+        if (writer != null) {
+            writer.discard();
+        }
+        try {
+            buffer.release();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Captures the bytes written to it.  Non-blocking mode is refused:
+     * registering the WriteListener with the output stream of the
+     * wrapped response would switch that stream to non-blocking mode,
+     * while writeTo writes the captured body to it with blocking writes.
+     */
+    private class CapturingOutputStream extends ServletOutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte buf[], int offset, int len)
+            throws IOException
+        {
+            if (buf == null) {
+                throw new NullPointerException(
+                        lStrings.getString("err.io.nullArray"));
+            }
+
+            if (offset < 0 || len < 0 || offset+len > buf.length) {
+                String msg = lStrings.getString("err.io.indexOutOfBounds");
+                Object[] msgArgs = new Object[3];
+                msgArgs[0] = Integer.valueOf(offset);
+                msgArgs[1] = Integer.valueOf(len);
+                msgArgs[2] = Integer.valueOf(buf.length);
+                msg = MessageFormat.format(msg, msgArgs);
+                throw new IndexOutOfBoundsException(msg);
+            }
+
+            buffer.write(buf, offset, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (writeListener == null) {
+                throw new NullPointerException(
+                    "WriteListener cannot be null");
+            }
+            throw new IllegalStateException(
+                lStrings.getString("err.ise.capturing_non_blocking"));
+        }
+    }
+}
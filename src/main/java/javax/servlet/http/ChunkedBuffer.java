@@ -0,0 +1,299 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import javax.servlet.ServletOutputStream;
+
+/*
+ * A growable byte buffer made of a chain of fixed-size chunks, which are
+ * taken from and returned to a pool shared by all buffers, so that
+ * capturing a body neither copies it as it grows nor leaves garbage
+ * behind.  Past a threshold, further bytes are spilled to a temporary
+ * file, which is deleted when the buffer is released.
+ *
+ * The content is kept in the order written: first the full chunks held
+ * in memory, then the file, then the current chunk, which serves as the
+ * write buffer of the file once spilling has started.  A buffer is not
+ * thread safe.
+ */
+// file private
+final class ChunkedBuffer {
+
+    static final int CHUNK_SIZE = 8192;
+
+    // at most 4 MB of idle chunks are kept
+    private static final ArrayBlockingQueue<byte[]> pool =
+        new ArrayBlockingQueue<byte[]>(512);
+
+    private final long memoryThreshold;
+    private final List<byte[]> chunks = new ArrayList<byte[]>();
+    private byte[] current;
+    private int count;          // bytes used in the current chunk
+    private FileChannel file;
+    private long fileSize;
+
+    /*
+     * Creates a buffer keeping about the given number of bytes in memory,
+     * at least one chunk, or any number if the threshold is negative.
+     */
+    ChunkedBuffer(long memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    long size() {
+        return (long) chunks.size() * CHUNK_SIZE + fileSize + count;
+    }
+
+    void write(int b) throws IOException {
+        if (current == null) {
+            current = take();
+        } else if (count == CHUNK_SIZE) {
+            advance();
+        }
+        current[count++] = (byte) b;
+    }
+
+    void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (current == null) {
+                current = take();
+            } else if (count == CHUNK_SIZE) {
+                advance();
+            }
+            if (file != null && count == 0 && len >= CHUNK_SIZE) {
+                // bypass the write buffer of the file
+                writeFile(b, off, len);
+                return;
+            }
+            int n = Math.min(len, CHUNK_SIZE - count);
+            System.arraycopy(b, off, current, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /*
+     * Reads the given stream into the buffer, directly into its chunks,
+     * until the end of the stream or until the buffer holds more than
+     * maxLength bytes, if maxLength is not negative.
+     */
+    void readFrom(InputStream in, long maxLength) throws IOException {
+        while (maxLength < 0 || size() <= maxLength) {
+            if (current == null) {
+                current = take();
+            } else if (count == CHUNK_SIZE) {
+                advance();
+            }
+            int n = in.read(current, count, CHUNK_SIZE - count);
+            if (n < 0) {
+                return;
+            }
+            count += n;
+        }
+    }
+
+    /*
+     * Reads up to len bytes of the content, starting at the given
+     * position, into the given array.  Returns the number of bytes read,
+     * which may be less than len, or -1 at the end of the content.
+     */
+    int read(long position, byte[] b, int off, int len) throws IOException {
+        long remaining = size() - position;
+        if (remaining <= 0) {
+            return -1;
+        }
+        len = (int) Math.min(len, remaining);
+        long memory = (long) chunks.size() * CHUNK_SIZE;
+        if (position < memory) {
+            int start = (int) (position % CHUNK_SIZE);
+            int n = Math.min(len, CHUNK_SIZE - start);
+            System.arraycopy(chunks.get((int) (position / CHUNK_SIZE)), start,
+                             b, off, n);
+            return n;
+        }
+        position -= memory;
+        if (position < fileSize) {
+            int n = (int) Math.min(len, fileSize - position);
+            return file.read(ByteBuffer.wrap(b, off, n), position);
+        }
+        System.arraycopy(current, (int) (position - fileSize), b, off, len);
+        return len;
+    }
+
+    /*
+     * Writes the content of the buffer to the given stream.  The file
+     * part is transferred with ServletOutputStream.transferFrom, so that
+     * containers can send it without copying it to the heap.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        for (byte[] chunk : chunks) {
+            out.write(chunk, 0, CHUNK_SIZE);
+        }
+        if (file != null) {
+            if (out instanceof ServletOutputStream) {
+                ServletOutputStream sos = (ServletOutputStream) out;
+                long position = 0;
+                while (position < fileSize) {
+                    long n = sos.transferFrom(file, position,
+                                              fileSize - position);
+                    if (n == 0) {
+                        throw new EOFException();
+                    }
+                    position += n;
+                }
+            } else {
+                ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE);
+                long position = 0;
+                while (position < fileSize) {
+                    buf.clear();
+                    int n = file.read(buf, position);
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    out.write(buf.array(), 0, n);
+                    position += n;
+                }
+            }
+        }
+        if (count > 0) {
+            out.write(current, 0, count);
+        }
+    }
+
+    /*
+     * Returns a copy of the content of the buffer.
+     */
+    byte[] toByteArray() throws IOException {
+        long size = size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("Required array size too large");
+        }
+        byte[] result = new byte[(int) size];
+        int pos = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, pos, CHUNK_SIZE);
+            pos += CHUNK_SIZE;
+        }
+        if (file != null) {
+            ByteBuffer dst = ByteBuffer.wrap(result, pos, (int) fileSize);
+            while (dst.hasRemaining()) {
+                if (file.read(dst, dst.position() - pos) < 0) {
+                    throw new EOFException();
+                }
+            }
+            pos += (int) fileSize;
+        }
+        if (count > 0) {
+            System.arraycopy(current, 0, result, pos, count);
+        }
+        return result;
+    }
+
+    /*
+     * Discards the content of the buffer, returning its chunks to the pool
+     * and deleting its file.  The buffer may be used again afterwards.
+     */
+    void release() throws IOException {
+        for (byte[] chunk : chunks) {
+            pool.offer(chunk);
+        }
+        chunks.clear();
+        if (current != null) {
+            pool.offer(current);
+            current = null;
+        }
+        count = 0;
+        fileSize = 0;
+        FileChannel f = file;
+        file = null;
+        if (f != null) {
+            f.close();
+        }
+    }
+
+    private static byte[] take() {
+        byte[] chunk = pool.poll();
+        return (chunk != null) ? chunk : new byte[CHUNK_SIZE];
+    }
+
+    /*
+     * Called when the current chunk is full: keeps it in memory and starts
+     * a new one, unless that would exceed the memory threshold, in which
+     * case the chunk is written to the file and then reused.
+     */
+    private void advance() throws IOException {
+        if (file == null && (memoryThreshold < 0
+                || (long) (chunks.size() + 2) * CHUNK_SIZE
+                    <= memoryThreshold)) {
+            chunks.add(current);
+            current = take();
+        } else {
+            writeFile(current, 0, count);
+        }
+        count = 0;
+    }
+
+    private void writeFile(byte[] b, int off, int len) throws IOException {
+        if (file == null) {
+            Path path = Files.createTempFile("servlet-buffer", ".tmp");
+            file = FileChannel.open(path, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        ByteBuffer src = ByteBuffer.wrap(b, off, len);
+        while (src.hasRemaining()) {
+            fileSize += file.write(src, fileSize);
+        }
+    }
+}
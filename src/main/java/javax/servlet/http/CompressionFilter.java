@@ -0,0 +1,1121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * A filter compressing response bodies with the <code>gzip</code>
+ * content-coding, for clients that accept it.
+ *
+ * <p>The body is compressed as it is written, through the output stream
+ * of the response, so it is never held in memory as a whole. The first
+ * bytes of the body, up to a minimum size, are held back: a body that
+ * is shorter is sent as it is, with its content length, since
+ * compressing it would not pay off. A body is compressed only if
+ * <ul>
+ * <li>the <code>Accept-Encoding</code> header of the request accepts
+ *     <code>gzip</code> with a non-zero quality value;</li>
+ * <li>the status code of the response is neither 204 (No Content), 206
+ *     (Partial Content) nor 304 (Not Modified);</li>
+ * <li>the response has neither a <code>Content-Encoding</code> nor a
+ *     <code>Content-Range</code> header, and its
+ *     <code>Cache-Control</code> header does not contain
+ *     <code>no-transform</code>;</li>
+ * <li>its content type is compressible, as decided by
+ *     {@link #isCompressible}, which rejects types that are usually
+ *     compressed already, such as images and archives.</li>
+ * </ul>
+ *
+ * <p>Whenever a body could have been compressed for a client accepting
+ * <code>gzip</code>, <code>Accept-Encoding</code> is added to the
+ * <code>Vary</code> header of the response, whether or not it is
+ * compressed. When a body is compressed, the content length set by the
+ * application, if any, is dropped, and a strong entity-tag is made weak,
+ * since the compressed body is not the representation it identifies.
+ *
+ * <p>Compressors, each made of a {@link Deflater} and its buffers, are
+ * pooled, with two compressors per processor, so that neither is
+ * allocated for each response. The output stream supports non-blocking
+ * writes: once a {@link WriteListener} has been set, the compressed data
+ * is written to the output stream of the response 8 KB at a time, and
+ * only while that stream is ready. The data that cannot be written yet
+ * is kept, uncompressed, and written whenever the output stream of the
+ * response is ready again; {@link ServletOutputStream#isReady} returns
+ * <code>false</code> until all of it has been written. The same holds
+ * for the end of the body once the output stream is closed: the output
+ * stream of the response is closed only after it has been written.
+ *
+ * <p>The filter accepts two initialization parameters:
+ * <code>compressionLevel</code>, from 0 to 9, or -1 for the default
+ * level of {@link Deflater}, and <code>minSize</code>, the minimum
+ * length of a compressed body, which is {@link #DEFAULT_MIN_SIZE} by
+ * default.
+ *
+ * <p>The response is finished when the filter chain returns. If
+ * asynchronous processing has been started, it is finished when the
+ * application closes the output stream or the writer of the response,
+ * which it must then do.
+ *
+ * @since Servlet 4.1
+ */
+public class CompressionFilter extends HttpFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The minimum length of a compressed body by default, in bytes.
+     */
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final String GZIP_CODING = "gzip";
+
+    // the gzip member header: no file name, no modification time
+    private static final byte[] GZIP_HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // the states of a CompressingOutputStream
+    private static final int UNDECIDED = 0;
+    private static final int IDENTITY = 1;
+    private static final int GZIP = 2;
+    private static final int CLOSED = 3;
+
+    private transient int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private transient int minSize = DEFAULT_MIN_SIZE;
+    private transient ArrayBlockingQueue<Compressor> pool;
+    private transient volatile boolean destroyed;
+
+    /**
+     * Does nothing, because the filter is initialized by
+     * {@link #init()}.
+     */
+    public CompressionFilter() { }
+
+    /**
+     * Reads the initialization parameters of the filter and creates its
+     * pool of compressors.
+     *
+     * @throws ServletException if an initialization parameter is invalid
+     */
+    @Override
+    public void init() throws ServletException {
+        compressionLevel = intParameter("compressionLevel",
+                                        Deflater.DEFAULT_COMPRESSION, -1, 9);
+        minSize = intParameter("minSize", DEFAULT_MIN_SIZE, 0, BUFFER_SIZE);
+        pool = new ArrayBlockingQueue<Compressor>(
+            2 * Runtime.getRuntime().availableProcessors());
+        destroyed = false;
+    }
+
+    /**
+     * Releases the pooled compressors.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+        if (pool != null) {
+            Compressor compressor;
+            while ((compressor = pool.poll()) != null) {
+                compressor.deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Passes the request down the chain with a response that compresses
+     * its body, if the client accepts it, and finishes the response once
+     * the chain returns.
+     *
+     * @param req   the request
+     *
+     * @param res   the response
+     *
+     * @param chain the filter chain
+     *
+     * @throws IOException if an input or output exception occurred
+     *
+     * @throws ServletException if the request could not be processed
+     *
+     * @throws IllegalStateException if the filter has not been
+     * initialized
+     */
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse res,
+                            FilterChain chain)
+            throws IOException, ServletException {
+        if (pool == null) {
+            String errMsg = lStrings.getString("err.filter_not_initialized");
+            Object[] errArgs = new Object[1];
+            errArgs[0] = getClass().getName();
+            errMsg = MessageFormat.format(errMsg, errArgs);
+            throw new IllegalStateException(errMsg);
+        }
+        CompressingResponse response =
+            new CompressingResponse(res, acceptsGzip(req));
+        boolean finished = false;
+        try {
+            chain.doFilter(req, response);
+            if (!req.isAsyncStarted()) {
+                response.finish();
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                response.abort();
+            }
+        }
+    }
+
+    /**
+     * Tests whether a body of the given content type is worth
+     * compressing.
+     *
+     * <p>The default implementation accepts the <code>text</code> types,
+     * the JavaScript, JSON and XML types, including those with a
+     * <code>+json</code> or <code>+xml</code> suffix, such as
+     * <code>image/svg+xml</code>, and responses without a content type.
+     *
+     * @param contentType the content type of the response, possibly with
+     *                    parameters, or <code>null</code>
+     *
+     * @return <code>true</code> if the body should be compressed
+     */
+    protected boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        int end = contentType.indexOf(';');
+        if (end == -1) {
+            end = contentType.length();
+        }
+        while (end > 0 && contentType.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (startsWith(contentType, 0, end, "text/")) {
+            return true;
+        }
+        if (startsWith(contentType, 0, end, "application/")) {
+            int start = "application/".length();
+            return matches(contentType, start, end, "javascript")
+                || matches(contentType, start, end, "json")
+                || matches(contentType, start, end, "xml")
+                || matches(contentType, start, end, "xhtml+xml")
+                || endsWith(contentType, start, end, "+json")
+                || endsWith(contentType, start, end, "+xml");
+        }
+        return endsWith(contentType, 0, end, "+xml")
+            || endsWith(contentType, 0, end, "+json");
+    }
+
+    /*
+     * Tests whether the Accept-Encoding headers of the request accept
+     * gzip, either by name or through "*", with a non-zero quality value.
+     * An explicit entry for gzip, or its alias x-gzip, takes precedence
+     * over "*".
+     */
+    static boolean acceptsGzip(HttpServletRequest req) {
+        Enumeration<String> values = req.getHeaders(
+            HeaderName.ACCEPT_ENCODING.getName());
+        if (values == null) {
+            return false;
+        }
+        int wildcard = -1;
+        while (values.hasMoreElements()) {
+            String value = values.nextElement();
+            int len = value.length();
+            int pos = 0;
+            while (pos < len) {
+                int end = value.indexOf(',', pos);
+                if (end == -1) {
+                    end = len;
+                }
+                int codingEnd = value.indexOf(';', pos);
+                if (codingEnd == -1 || codingEnd > end) {
+                    codingEnd = end;
+                }
+                int start = skipSpaces(value, pos, codingEnd);
+                int stop = codingEnd;
+                while (stop > start && value.charAt(stop - 1) == ' ') {
+                    stop--;
+                }
+                if (matches(value, start, stop, GZIP_CODING)
+                        || matches(value, start, stop, "x-gzip")) {
+                    return !isZeroQuality(value, codingEnd, end);
+                }
+                if (matches(value, start, stop, "*")) {
+                    wildcard = isZeroQuality(value, codingEnd, end) ? 0 : 1;
+                }
+                pos = end + 1;
+            }
+        }
+        return wildcard == 1;
+    }
+
+    /*
+     * Tests whether the parameters of an Accept-Encoding entry, between
+     * the given offsets, include a quality value of zero.
+     */
+    private static boolean isZeroQuality(String value, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            int paramEnd = value.indexOf(';', pos + 1);
+            if (paramEnd == -1 || paramEnd > end) {
+                paramEnd = end;
+            }
+            int p = skipSpaces(value, pos + 1, paramEnd);
+            if (p + 1 < paramEnd && (value.charAt(p) | 0x20) == 'q'
+                    && value.charAt(p + 1) == '=') {
+                for (p += 2; p < paramEnd; p++) {
+                    char c = value.charAt(p);
+                    if (c >= '1' && c <= '9') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            pos = paramEnd;
+        }
+        return false;
+    }
+
+    private static int skipSpaces(String s, int pos, int end) {
+        while (pos < end && (s.charAt(pos) == ' ' || s.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean matches(String s, int start, int end, String t) {
+        return end - start == t.length()
+            && s.regionMatches(true, start, t, 0, t.length());
+    }
+
+    private static boolean containsIgnoreCase(String s, String t) {
+        for (int i = 0, last = s.length() - t.length(); i <= last; i++) {
+            if (s.regionMatches(true, i, t, 0, t.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(String s, int start, int end,
+                                      String prefix) {
+        return end - start >= prefix.length()
+            && s.regionMatches(true, start, prefix, 0, prefix.length());
+    }
+
+    private static boolean endsWith(String s, int start, int end,
+                                    String suffix) {
+        return end - start >= suffix.length()
+            && s.regionMatches(true, end - suffix.length(), suffix, 0,
+                               suffix.length());
+    }
+
+    private int intParameter(String name, int defaultValue, int min, int max)
+            throws ServletException {
+        String value = getInitParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            if (i >= min && i <= max) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        String errMsg = lStrings.getString("err.init_param_invalid");
+        Object[] errArgs = new Object[2];
+        errArgs[0] = name;
+        errArgs[1] = value;
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        throw new ServletException(errMsg);
+    }
+
+    private Compressor takeCompressor() {
+        Compressor compressor = pool.poll();
+        if (compressor == null) {
+            compressor = new Compressor(compressionLevel, minSize);
+        }
+        return compressor;
+    }
+
+    private void returnCompressor(Compressor compressor) {
+        compressor.deflater.reset();
+        compressor.crc.reset();
+        if (destroyed || !pool.offer(compressor)) {
+            compressor.deflater.end();
+        }
+    }
+
+    /*
+     * A pooled deflater, with the checksum of the gzip trailer, the
+     * buffer holding back the first bytes of a body and the buffer
+     * receiving compressed data.
+     */
+    private static final class Compressor {
+
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] in;
+        final byte[] out = new byte[BUFFER_SIZE];
+
+        Compressor(int level, int minSize) {
+            deflater = new Deflater(level, true);
+            in = new byte[minSize];
+        }
+    }
+
+    /*
+     * The response passed down the chain.  It keeps the content length
+     * set by the application until it is known whether the body is
+     * compressed.
+     */
+    private class CompressingResponse extends HttpServletResponseWrapper {
+
+        private final boolean gzipAccepted;
+        private CompressingOutputStream outputStream;
+        private ResettablePrintWriter writer;
+        private boolean usingOutputStream;
+        private long contentLength = -1;
+
+        CompressingResponse(HttpServletResponse response,
+                            boolean gzipAccepted) {
+            super(response);
+            this.gzipAccepted = gzipAccepted;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException(
+                    lStrings.getString("err.ise.getOutputStream"));
+            }
+            usingOutputStream = true;
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws UnsupportedEncodingException {
+            if (usingOutputStream) {
+                throw new IllegalStateException(
+                    lStrings.getString("err.ise.getWriter"));
+            }
+            if (writer == null) {
+                writer = new ResettablePrintWriter(stream(),
+                                                   getCharacterEncoding());
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (outputStream == null || outputStream.state == UNDECIDED) {
+                contentLength = len;
+            } else if (outputStream.state == IDENTITY) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HeaderName.CONTENT_LENGTH.matches(name)) {
+                setContentLengthHeader(value);
+            } else if (HeaderName.ETAG.matches(name)) {
+                super.setHeader(name, etag(value));
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HeaderName.CONTENT_LENGTH.matches(name)) {
+                setContentLengthHeader(value);
+            } else if (HeaderName.ETAG.matches(name)) {
+                super.addHeader(name, etag(value));
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            if (HeaderName.CONTENT_LENGTH.matches(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            if (HeaderName.CONTENT_LENGTH.matches(name)) {
+                setContentLengthLong(value);
+            } else {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (writer != null) {
+                writer.discard();
+            }
+            if (outputStream != null) {
+                outputStream.restart();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            // like the response, forget whether the writer or the output
+            // stream was used; the text of the writer is dropped
+            if (writer != null) {
+                writer.discard();
+                writer = null;
+            }
+            usingOutputStream = false;
+            if (outputStream != null && outputStream.state != CLOSED) {
+                outputStream.discard();
+                outputStream.state = UNDECIDED;
+            }
+        }
+
+        /*
+         * Completes the body, once the chain has returned.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.close();
+            } else if (outputStream != null) {
+                outputStream.close();
+            } else if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        /*
+         * Returns the compressor to the pool after a failure.
+         */
+        void abort() {
+            if (outputStream != null) {
+                outputStream.discard();
+            }
+        }
+
+        private CompressingOutputStream stream() {
+            if (outputStream == null) {
+                outputStream = new CompressingOutputStream(this);
+            }
+            return outputStream;
+        }
+
+        private void setContentLengthHeader(String value) {
+            try {
+                setContentLengthLong(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                super.setHeader(HeaderName.CONTENT_LENGTH.getName(), value);
+            }
+        }
+
+        /*
+         * Makes a strong entity-tag weak if the body is compressed.
+         */
+        private String etag(String value) {
+            if (outputStream != null && outputStream.state == GZIP
+                    && value != null && value.startsWith("\"")) {
+                return "W/" + value;
+            }
+            return value;
+        }
+
+        /*
+         * Tests whether the body of the response could be compressed,
+         * depending on the client.
+         */
+        boolean isCompressible() {
+            int status = getStatus();
+            if (status == SC_NO_CONTENT || status == SC_PARTIAL_CONTENT
+                    || status == SC_NOT_MODIFIED) {
+                return false;
+            }
+            if (containsHeader(HeaderName.CONTENT_ENCODING)
+                    || containsHeader(HeaderName.CONTENT_RANGE)) {
+                return false;
+            }
+            String cacheControl = getHeader(HeaderName.CACHE_CONTROL);
+            if (cacheControl != null
+                    && containsIgnoreCase(cacheControl, "no-transform")) {
+                return false;
+            }
+            return CompressionFilter.this.isCompressible(getContentType());
+        }
+
+        /*
+         * Sets the headers of a compressed body.
+         */
+        void startCompression() {
+            super.setHeader(HeaderName.CONTENT_ENCODING.getName(),
+                           GZIP_CODING);
+            String etag = getHeader(HeaderName.ETAG);
+            if (etag != null && etag.startsWith("\"")) {
+                super.setHeader(HeaderName.ETAG.getName(), "W/" + etag);
+            }
+        }
+
+        /*
+         * Sets the headers of a body sent as it is, with the given length
+         * if the application did not set one.
+         */
+        void startIdentity(long length) {
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            } else if (length >= 0) {
+                super.setContentLengthLong(length);
+            }
+        }
+
+        /*
+         * Adds Accept-Encoding to the Vary header, unless it is already
+         * listed, or the header is "*".
+         */
+        void addVary() {
+            for (String vary : getHeaders(HeaderName.VARY)) {
+                int pos = 0;
+                int len = vary.length();
+                while (pos < len) {
+                    int end = vary.indexOf(',', pos);
+                    if (end == -1) {
+                        end = len;
+                    }
+                    int start = skipSpaces(vary, pos, end);
+                    int stop = end;
+                    while (stop > start && vary.charAt(stop - 1) == ' ') {
+                        stop--;
+                    }
+                    if (matches(vary, start, stop, "*")
+                            || matches(vary, start, stop,
+                                       HeaderName.ACCEPT_ENCODING.getName())) {
+                        return;
+                    }
+                    pos = end + 1;
+                }
+            }
+            super.addHeader(HeaderName.VARY.getName(),
+                            HeaderName.ACCEPT_ENCODING.getName());
+        }
+    }
+
+    /*
+     * Holds back the first bytes of the body, up to the minimum size,
+     * then either compresses the body into the output stream of the
+     * response or passes it through.  In non-blocking mode, the data
+     * written is copied to a backlog, which drain compresses and writes
+     * one buffer at a time, as long as the output stream of the response
+     * is ready, on each write, flush, close and isReady, and whenever
+     * the container notifies the write listener.
+     */
+    private class CompressingOutputStream extends ServletOutputStream {
+
+        private final CompressingResponse response;
+        private ServletOutputStream target;
+        private Compressor compressor;
+        private int state = UNDECIDED;
+        private int pending;            // bytes held back in compressor.in
+        private byte[] out;             // compressed data not yet written
+        private int count;              // length of the data in out
+        private boolean nonBlocking;
+        private byte[] backlog;         // input of the deflater
+        private int backlogEnd;         // end of the input in backlog
+        private long backlogBase;       // bytes read before the backlog
+        private boolean flushing;       // a flush of the backlog pending
+        private boolean closing;        // a close pending the backlog
+        private boolean trailerWritten; // the gzip trailer is in out
+        private final byte[] single = new byte[1];
+
+        CompressingOutputStream(CompressingResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte buf[], int offset, int len)
+            throws IOException
+        {
+            if (buf == null) {
+                throw new NullPointerException(
+                        lStrings.getString("err.io.nullArray"));
+            }
+
+            if (offset < 0 || len < 0 || offset+len > buf.length) {
+                String msg = lStrings.getString("err.io.indexOutOfBounds");
+                Object[] msgArgs = new Object[3];
+                msgArgs[0] = Integer.valueOf(offset);
+                msgArgs[1] = Integer.valueOf(len);
+                msgArgs[2] = Integer.valueOf(buf.length);
+                msg = MessageFormat.format(msg, msgArgs);
+                throw new IndexOutOfBoundsException(msg);
+            }
+
+            if (closing) {
+                return;
+            }
+            if (state == UNDECIDED) {
+                if (response.gzipAccepted && compressor == null) {
+                    compressor = takeCompressor();
+                }
+                if (compressor != null
+                        && pending + len <= compressor.in.length) {
+                    System.arraycopy(buf, offset, compressor.in, pending, len);
+                    pending += len;
+                    return;
+                }
+                if (start(true, -1, buf, offset, len)) {
+                    return;
+                }
+            }
+            if (state == IDENTITY) {
+                target.write(buf, offset, len);
+            } else if (state == GZIP) {
+                if (nonBlocking) {
+                    addBacklog(buf, offset, len);
+                    drain();
+                } else {
+                    deflate(buf, offset, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (closing) {
+                return;
+            }
+            if (state == UNDECIDED) {
+                start(true, -1, null, 0, 0);
+            }
+            if (state == GZIP && nonBlocking) {
+                flushing = true;
+                drain();
+            } else if (state == GZIP) {
+                Deflater deflater = compressor.deflater;
+                int n;
+                do {
+                    n = deflater.deflate(out, count, out.length - count,
+                                         Deflater.SYNC_FLUSH);
+                    count += n;
+                    if (count < out.length) {
+                        break;
+                    }
+                    emit();
+                } while (n > 0);
+                emit();
+            }
+            if (state != CLOSED) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (state == CLOSED || closing) {
+                return;
+            }
+            boolean deferred = false;
+            try {
+                if (state == UNDECIDED) {
+                    start(false, pending, null, 0, 0);
+                }
+                if (state == GZIP && nonBlocking) {
+                    compressor.deflater.finish();
+                    closing = true;
+                    flushing = false;
+                    drain();
+                    // drain closes the output stream of the response,
+                    // now or once the rest of the body is written
+                    deferred = true;
+                    return;
+                } else if (state == GZIP) {
+                    Deflater deflater = compressor.deflater;
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        count += deflater.deflate(out, count,
+                                                  out.length - count);
+                        if (count == out.length) {
+                            emit();
+                        }
+                    }
+                    if (out.length - count < 8) {
+                        emit();
+                    }
+                    writeInt((int) compressor.crc.getValue());
+                    writeInt((int) deflater.getBytesRead());
+                    emit();
+                }
+                state = CLOSED;
+                target.close();
+            } finally {
+                if (!deferred) {
+                    state = CLOSED;
+                    discard();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            try {
+                return drain();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (writeListener == null) {
+                throw new NullPointerException(
+                    "WriteListener cannot be null");
+            }
+            try {
+                target().setWriteListener(new DrainingListener(writeListener));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            nonBlocking = true;
+        }
+
+        /*
+         * Decides whether the body is compressed, and writes the bytes
+         * held back, followed by the given bytes, if any.  The body is
+         * compressed only if allowed, and if the client accepts it.
+         * Returns true if the given bytes have been written.
+         */
+        private boolean start(boolean allowed, long length,
+                              byte[] buf, int offset, int len)
+                throws IOException {
+            target();
+            boolean compressible = response.isCompressible();
+            if (compressible) {
+                response.addVary();
+            }
+            if (allowed && compressible && response.gzipAccepted) {
+                if (compressor == null) {
+                    compressor = takeCompressor();
+                }
+                response.startCompression();
+                state = GZIP;
+                out = compressor.out;
+                System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+                count = GZIP_HEADER.length;
+                if (nonBlocking) {
+                    addBacklog(compressor.in, 0, pending);
+                } else {
+                    deflate(compressor.in, 0, pending);
+                }
+                pending = 0;
+                return false;
+            }
+
+            response.startIdentity(length);
+            state = IDENTITY;
+            boolean written = false;
+            if (pending > 0) {
+                byte[] in = compressor.in;
+                if (nonBlocking && len > 0) {
+                    // a single write, as the target may not be ready
+                    // for a second one
+                    byte[] b = Arrays.copyOf(in, pending + len);
+                    System.arraycopy(buf, offset, b, pending, len);
+                    target.write(b, 0, b.length);
+                    written = true;
+                } else {
+                    target.write(in, 0, pending);
+                }
+                pending = 0;
+            }
+            if (compressor != null) {
+                returnCompressor(compressor);
+                compressor = null;
+            }
+            return written;
+        }
+
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            compressor.crc.update(b, off, len);
+            Deflater deflater = compressor.deflater;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                count += deflater.deflate(out, count, out.length - count);
+                if (count == out.length) {
+                    emit();
+                }
+            }
+        }
+
+        private void writeInt(int i) {
+            out[count++] = (byte) i;
+            out[count++] = (byte) (i >>> 8);
+            out[count++] = (byte) (i >>> 16);
+            out[count++] = (byte) (i >>> 24);
+        }
+
+        /*
+         * Appends the given bytes to the backlog, the input of the
+         * deflater, in non-blocking mode.
+         */
+        private void addBacklog(byte[] b, int off, int len) {
+            if (len == 0) {
+                return;
+            }
+            compressor.crc.update(b, off, len);
+            Deflater deflater = compressor.deflater;
+            int remaining = deflater.needsInput() ? 0
+                : backlogEnd - (int) (deflater.getBytesRead() - backlogBase);
+            if (backlog == null || remaining + len > backlog.length) {
+                byte[] buf = new byte[Math.max(remaining + len, BUFFER_SIZE)];
+                if (remaining > 0) {
+                    System.arraycopy(backlog, backlogEnd - remaining,
+                                     buf, 0, remaining);
+                }
+                backlog = buf;
+            } else if (remaining > 0) {
+                System.arraycopy(backlog, backlogEnd - remaining,
+                                 backlog, 0, remaining);
+            }
+            System.arraycopy(b, off, backlog, remaining, len);
+            backlogEnd = remaining + len;
+            backlogBase = deflater.getBytesRead();
+            deflater.setInput(backlog, 0, backlogEnd);
+        }
+
+        /*
+         * Tests whether the backlog has not been compressed and written
+         * completely, in non-blocking mode.
+         */
+        private boolean hasBacklog() {
+            return flushing || !compressor.deflater.needsInput()
+                || (closing && !trailerWritten);
+        }
+
+        /*
+         * Compresses the backlog into the output buffer, until it is full,
+         * then completes a pending flush, or the end of the body once the
+         * stream is closed, once the backlog is consumed.
+         */
+        private void fill() {
+            Deflater deflater = compressor.deflater;
+            while (count < out.length) {
+                if (!deflater.needsInput()
+                        || (closing && !deflater.finished())) {
+                    count += deflater.deflate(out, count, out.length - count);
+                } else if (closing && !trailerWritten) {
+                    if (out.length - count >= 8) {
+                        writeInt((int) compressor.crc.getValue());
+                        writeInt((int) deflater.getBytesRead());
+                        trailerWritten = true;
+                    }
+                    return;
+                } else if (flushing) {
+                    count += deflater.deflate(out, count, out.length - count,
+                                              Deflater.SYNC_FLUSH);
+                    // the flush is complete unless it filled the buffer
+                    flushing = count == out.length;
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void emit() throws IOException {
+            if (count > 0) {
+                target.write(out, 0, count);
+                count = 0;
+            }
+        }
+
+        /*
+         * Writes the backlog, one buffer at a time, as long as the output
+         * stream of the response is ready, then closes that stream if
+         * the close of this stream is pending.  Returns true if the
+         * backlog has been written and the output stream is ready.
+         */
+        private boolean drain() throws IOException {
+            if (nonBlocking && state == GZIP) {
+                while (hasBacklog()) {
+                    if (!target.isReady()) {
+                        return false;
+                    }
+                    fill();
+                    emit();
+                }
+                if (closing) {
+                    try {
+                        target.close();
+                    } finally {
+                        state = CLOSED;
+                        discard();
+                    }
+                }
+            }
+            return target().isReady();
+        }
+
+        /*
+         * Restarts the body after the buffer of the response has been
+         * reset: the bytes held back or buffered are dropped, and a
+         * compressed body starts over with a new gzip header.
+         */
+        void restart() {
+            pending = 0;
+            flushing = false;
+            if (state == GZIP) {
+                compressor.deflater.reset();
+                compressor.crc.reset();
+                out = compressor.out;
+                System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+                count = GZIP_HEADER.length;
+            }
+        }
+
+        /*
+         * Returns the compressor, if any, to the pool.
+         */
+        void discard() {
+            pending = 0;
+            count = 0;
+            out = null;
+            backlog = null;
+            flushing = false;
+            closing = false;
+            trailerWritten = false;
+            if (compressor != null) {
+                returnCompressor(compressor);
+                compressor = null;
+            }
+        }
+
+        private ServletOutputStream target() throws IOException {
+            if (target == null) {
+                target = response.getResponse().getOutputStream();
+            }
+            return target;
+        }
+
+        /*
+         * Set on the output stream of the response, so that the backlog
+         * is written whenever that stream is ready, before the listener
+         * of the application is notified.
+         */
+        private class DrainingListener implements WriteListener {
+
+            private final WriteListener listener;
+
+            DrainingListener(WriteListener listener) {
+                this.listener = listener;
+            }
+
+            @Override
+            public void onWritePossible() throws IOException {
+                if (drain() && state != CLOSED) {
+                    listener.onWritePossible();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                listener.onError(t);
+            }
+        }
+    }
+}
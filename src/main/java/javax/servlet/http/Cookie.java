@@ -70,12 +70,26 @@ public class Cookie implements Cloneable, Serializable {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    // the characters allowed in cookie names, as HttpTokens bit masks
+    private static final long NAME_LOW;
+    private static final long NAME_HIGH;
+
     static {
         if (Boolean.valueOf(System.getProperty("org.glassfish.web.rfc2109_cookie_names_enforced", "true"))) {
             TSPECIALS = "/()<>@,;:\\\"[]?={} \t";
         } else {
             TSPECIALS = ",; ";
         }
+
+        StringBuilder allowed = new StringBuilder(95);
+        for (char c = 0x20; c < 0x7f; c++) {
+            if (TSPECIALS.indexOf(c) == -1) {
+                allowed.append(c);
+            }
+        }
+        long[] masks = HttpTokens.masks(allowed.toString());
+        NAME_LOW = masks[0];
+        NAME_HIGH = masks[1];
     }
     
     //
@@ -98,6 +112,9 @@ public class Cookie implements Cloneable, Serializable {
     private int version = 0;	// ;Version=1 ... means RFC 2109++ style
     private boolean isHttpOnly = false;
 
+    // the rendered Set-Cookie header value, cleared by the setters
+    private transient String setCookieHeader;
+
     /**
      * Constructs a cookie with the specified name and value.
      *
@@ -200,6 +217,7 @@ public class Cookie implements Cloneable, Serializable {
      */
     public void setDomain(String domain) {
         this.domain = domain.toLowerCase(Locale.ENGLISH); // IE allegedly needs this
+        setCookieHeader = null;
     }
 
     /**
@@ -237,6 +255,7 @@ public class Cookie implements Cloneable, Serializable {
      */
     public void setMaxAge(int expiry) {
         maxAge = expiry;
+        setCookieHeader = null;
     }
 
     /**
@@ -275,6 +294,7 @@ public class Cookie implements Cloneable, Serializable {
      */
     public void setPath(String uri) {
         path = uri;
+        setCookieHeader = null;
     }
 
     /**
@@ -305,6 +325,7 @@ public class Cookie implements Cloneable, Serializable {
      */
     public void setSecure(boolean flag) {
         secure = flag;
+        setCookieHeader = null;
     }
 
     /**
@@ -348,6 +369,7 @@ public class Cookie implements Cloneable, Serializable {
      */
     public void setValue(String newValue) {
         value = newValue;
+        setCookieHeader = null;
     }
 
     /**
@@ -407,15 +429,7 @@ public class Cookie implements Cloneable, Serializable {
      * token; <code>false</code> otherwise
      */
     private boolean isToken(String value) {
-        int len = value.length();
-        for (int i = 0; i < len; i++) {
-            char c = value.charAt(i);
-            if (c < 0x20 || c >= 0x7f || TSPECIALS.indexOf(c) != -1) {
-                return false;
-            }
-        }
-
-        return true;
+        return HttpTokens.matches(value, NAME_LOW, NAME_HIGH);
     }
 
     /**
@@ -448,6 +462,7 @@ public class Cookie implements Cloneable, Serializable {
      */
     public void setHttpOnly(boolean isHttpOnly) {
         this.isHttpOnly = isHttpOnly;
+        setCookieHeader = null;
     }
  
     /**
@@ -461,5 +476,39 @@ public class Cookie implements Cloneable, Serializable {
     public boolean isHttpOnly() {
         return isHttpOnly;
     }
+
+    /**
+     * Returns the value of a <code>Set-Cookie</code> response header that
+     * sets this cookie, as defined by RFC 6265.
+     *
+     * <p>The header carries the name and value of this cookie and its
+     * <i>Max-Age</i>, <i>Domain</i>, <i>Path</i>, <i>Secure</i> and
+     * <i>HttpOnly</i> attributes. A maximum age of zero is also sent as
+     * an <i>Expires</i> date in the past; no other date is sent, so that
+     * the header does not depend on the time it is rendered. The comment
+     * and version of this cookie are not part of RFC 6265 and are not
+     * sent.
+     *
+     * <p>The header value is rendered once and kept until one of the
+     * setters of this cookie is called. To share a rendered header
+     * between requests, use a {@link CookieTemplate}.
+     *
+     * @return the value of the <code>Set-Cookie</code> header
+     *
+     * @throws IllegalArgumentException if the value of this cookie
+     * contains characters that RFC 6265 does not allow in a cookie value,
+     * or its domain or path contains control characters or semicolons
+     *
+     * @since Servlet 4.1
+     */
+    public String toSetCookieHeader() {
+        String header = setCookieHeader;
+        if (header == null) {
+            header = SetCookieEncoder.encode(name, value, domain, maxAge,
+                                             path, secure, isHttpOnly);
+            setCookieHeader = header;
+        }
+        return header;
+    }
 }
 
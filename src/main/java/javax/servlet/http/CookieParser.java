@@ -0,0 +1,349 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A parser for the value of a <code>Cookie</code> request header, as
+ * defined by RFC 6265.
+ *
+ * <p>The header is scanned once, in place, and only the offsets of the
+ * names and values of its cookies are recorded. Strings and
+ * {@link Cookie} objects are created only for the cookies that are asked
+ * for, so that looking up a single session or tracking cookie does not
+ * cost a <code>Cookie</code> object for every cookie a browser sends.
+ *
+ * <p>A parser can be reused: every call to one of the <code>parse</code>
+ * methods replaces the header parsed before. Header bytes are read as
+ * ISO-8859-1 and are not copied, so a byte array given to
+ * {@link #parse(byte[], int, int)} must not be modified while the parser
+ * is in use. Instances are not thread safe.
+ *
+ * <p>Pairs without a <code>=</code>, pairs whose name is not a token, and
+ * the <code>$</code>-prefixed attributes of RFC 2109 cookies are skipped.
+ * Values are returned as sent, including any surrounding double quotes.
+ *
+ * @see HttpServletRequest#getCookie
+ *
+ * @since Servlet 4.1
+ */
+public final class CookieParser {
+
+    // the header being parsed, either a string or a region of a byte array
+    private String string;
+    private byte[] bytes;
+
+    /*
+     * The offsets of the cookies, four per cookie: the start and end of
+     * the name, and the start and end of the value.
+     */
+    private int[] offsets = new int[32];
+
+    private int size;
+
+    /**
+     * Creates a parser, to be given a header with one of the
+     * <code>parse</code> methods.
+     */
+    public CookieParser() {
+    }
+
+    /**
+     * Parses the value of a <code>Cookie</code> header, replacing any
+     * header parsed before.
+     *
+     * @param header the value of the header
+     *
+     * @return this parser
+     */
+    public CookieParser parse(String header) {
+        if (header == null) {
+            throw new NullPointerException("Header cannot be null");
+        }
+        this.string = header;
+        this.bytes = null;
+        scan(0, header.length());
+        return this;
+    }
+
+    /**
+     * Parses the value of a <code>Cookie</code> header given as bytes,
+     * replacing any header parsed before. The bytes are not copied.
+     *
+     * @param b   the array holding the value of the header
+     *
+     * @param off the offset of the value in the array
+     *
+     * @param len the length of the value
+     *
+     * @return this parser
+     *
+     * @throws IndexOutOfBoundsException if <code>off</code> and
+     *  <code>len</code> do not describe a region of the array
+     */
+    public CookieParser parse(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.string = null;
+        this.bytes = b;
+        scan(off, off + len);
+        return this;
+    }
+
+    /**
+     * Returns the number of cookies in the header.
+     *
+     * @return the number of cookies
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the name of the cookie at the given index.
+     *
+     * @param index the index of the cookie, in the order of the header
+     *
+     * @return the name of the cookie
+     *
+     * @throws IndexOutOfBoundsException if there is no such cookie
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        return substring(offsets[4 * index], offsets[4 * index + 1]);
+    }
+
+    /**
+     * Returns the value of the cookie at the given index.
+     *
+     * @param index the index of the cookie, in the order of the header
+     *
+     * @return the value of the cookie, which may be empty
+     *
+     * @throws IndexOutOfBoundsException if there is no such cookie
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        return substring(offsets[4 * index + 2], offsets[4 * index + 3]);
+    }
+
+    /**
+     * Returns the index of the first cookie with the given name. Names
+     * are compared case-sensitively, without creating any string.
+     *
+     * @param name the name of the cookie
+     *
+     * @return the index of the cookie, or -1 if there is none
+     */
+    public int indexOf(String name) {
+        int len = name.length();
+        for (int i = 0; i < size; i++) {
+            int start = offsets[4 * i];
+            if (offsets[4 * i + 1] - start == len
+                    && regionMatches(start, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value of the first cookie with the given name.
+     *
+     * @param name the name of the cookie
+     *
+     * @return the value of the cookie, or <code>null</code> if there is
+     *  none
+     */
+    public String getValue(String name) {
+        int index = indexOf(name);
+        return (index == -1) ? null : getValue(index);
+    }
+
+    /**
+     * Returns a <code>Cookie</code> for the first cookie with the given
+     * name. Only this cookie is materialized.
+     *
+     * @param name the name of the cookie
+     *
+     * @return the cookie, or <code>null</code> if there is none, or if
+     *  its name is one that a {@link Cookie} cannot be created with
+     */
+    public Cookie getCookie(String name) {
+        int index = indexOf(name);
+        if (index == -1) {
+            return null;
+        }
+        try {
+            return new Cookie(name, getValue(index));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns <code>Cookie</code> objects for all the cookies in the
+     * header, skipping those whose names a {@link Cookie} cannot be
+     * created with.
+     *
+     * @return the cookies, in the order of the header, which may be an
+     *  empty array
+     */
+    public Cookie[] getCookies() {
+        Cookie[] cookies = new Cookie[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            try {
+                cookies[count] = new Cookie(getName(i), getValue(i));
+                count++;
+            } catch (IllegalArgumentException e) {
+                // skip it
+            }
+        }
+        return (count == size) ? cookies : Arrays.copyOf(cookies, count);
+    }
+
+    /*
+     * Scans the given region of the header, recording the offsets of the
+     * cookies in it.
+     */
+    private void scan(int start, int end) {
+        size = 0;
+        int i = start;
+        while (i < end) {
+            // skip leading white space
+            while (i < end && isWhitespace(charAt(i))) {
+                i++;
+            }
+
+            int nameStart = i;
+            char c = 0;
+            while (i < end && (c = charAt(i)) != '=' && c != ';') {
+                i++;
+            }
+            if (i == end || c == ';') {
+                // no '=', not a cookie
+                i++;
+                continue;
+            }
+            int nameEnd = i;
+            while (nameEnd > nameStart && isWhitespace(charAt(nameEnd - 1))) {
+                nameEnd--;
+            }
+
+            i++;
+            while (i < end && isWhitespace(charAt(i))) {
+                i++;
+            }
+            int valueStart = i;
+            while (i < end && charAt(i) != ';') {
+                i++;
+            }
+            int valueEnd = i;
+            while (valueEnd > valueStart
+                    && isWhitespace(charAt(valueEnd - 1))) {
+                valueEnd--;
+            }
+            i++;
+
+            if (nameEnd == nameStart || charAt(nameStart) == '$'
+                    || !isToken(nameStart, nameEnd)) {
+                continue;
+            }
+            if (4 * size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+            }
+            int[] o = offsets;
+            int k = 4 * size++;
+            o[k] = nameStart;
+            o[k + 1] = nameEnd;
+            o[k + 2] = valueStart;
+            o[k + 3] = valueEnd;
+        }
+    }
+
+    private char charAt(int i) {
+        return (string != null) ? string.charAt(i) : (char) (bytes[i] & 0xff);
+    }
+
+    private String substring(int start, int end) {
+        if (string != null) {
+            return string.substring(start, end);
+        }
+        return new String(bytes, start, end - start,
+                          StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean regionMatches(int start, String name) {
+        if (string != null) {
+            return string.regionMatches(start, name, 0, name.length());
+        }
+        byte[] b = bytes;
+        for (int j = 0; j < name.length(); j++) {
+            if ((b[start + j] & 0xff) != name.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isToken(int start, int end) {
+        for (int j = start; j < end; j++) {
+            if (!HttpTokens.isTokenChar(charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
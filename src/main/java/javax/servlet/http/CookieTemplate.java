@@ -0,0 +1,144 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An immutable cookie whose <code>Set-Cookie</code> header is rendered
+ * once, when the template is created, and then shared by every response
+ * that sets the cookie.
+ *
+ * <p>Templates suit cookies whose value and attributes never change, such
+ * as consent flags or locale preferences. The rendered header is
+ * available as a string, for {@link #addTo}, and as pre-encoded bytes,
+ * for containers that write headers directly to the connection.
+ *
+ * <pre>
+ *    private static final CookieTemplate CONSENT;
+ *    static {
+ *        Cookie cookie = new Cookie("consent", "yes");
+ *        cookie.setPath("/");
+ *        cookie.setMaxAge(31536000);
+ *        CONSENT = new CookieTemplate(cookie);
+ *    }
+ *    ...
+ *    CONSENT.addTo(response);
+ * </pre>
+ *
+ * @see Cookie#toSetCookieHeader
+ *
+ * @since Servlet 4.1
+ */
+public final class CookieTemplate {
+
+    private static final String SET_COOKIE = "Set-Cookie";
+
+    private final Cookie cookie;
+    private final String header;
+    private final ByteBuffer headerBytes;
+
+    /**
+     * Creates a template from the current state of the given cookie.
+     * Later changes to the cookie do not affect the template.
+     *
+     * @param cookie the cookie
+     *
+     * @throws IllegalArgumentException if the cookie cannot be rendered
+     * as a <code>Set-Cookie</code> header
+     */
+    public CookieTemplate(Cookie cookie) {
+        this.cookie = (Cookie) cookie.clone();
+        this.header = this.cookie.toSetCookieHeader();
+        this.headerBytes = ByteBuffer.wrap(
+            header.getBytes(StandardCharsets.ISO_8859_1)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the name of the cookie.
+     *
+     * @return the name of the cookie
+     */
+    public String getName() {
+        return cookie.getName();
+    }
+
+    /**
+     * Returns the value of the <code>Set-Cookie</code> header.
+     *
+     * @return the value of the header
+     */
+    public String getHeaderValue() {
+        return header;
+    }
+
+    /**
+     * Returns the value of the <code>Set-Cookie</code> header, encoded as
+     * ISO-8859-1. The returned buffer is read-only and shares its content
+     * with the template, but has a position and limit of its own.
+     *
+     * @return a read-only buffer holding the value of the header
+     */
+    public ByteBuffer getHeaderBytes() {
+        return headerBytes.duplicate();
+    }
+
+    /**
+     * Returns a new <code>Cookie</code> equal to the one this template
+     * was created from.
+     *
+     * @return a copy of the cookie
+     */
+    public Cookie toCookie() {
+        return (Cookie) cookie.clone();
+    }
+
+    /**
+     * Adds the <code>Set-Cookie</code> header of this template to the
+     * given response.
+     *
+     * @param response the response to set the cookie on
+     */
+    public void addTo(HttpServletResponse response) {
+        response.addHeader(SET_COOKIE, header);
+    }
+}
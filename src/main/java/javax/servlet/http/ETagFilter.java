@@ -0,0 +1,590 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.Base64;
+import java.util.Enumeration;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * A filter computing the entity-tag of the responses to GET requests
+ * from their bodies, for servlets that cannot compute it up front, and
+ * answering conditional requests whose <code>If-None-Match</code> header
+ * matches it with 304 (Not Modified).
+ *
+ * <p>The body is hashed as it is written, and held in a bounded buffer
+ * made of chunks taken from a pool shared with
+ * {@link CapturingHttpServletResponseWrapper}. Once the servlet has
+ * returned, the entity-tag is computed from the digest and set in the
+ * <code>ETag</code> header; the response is then either sent with no
+ * body and the status code 304, if the entity-tag matches the
+ * <code>If-None-Match</code> header of the request, using the weak
+ * comparison function, or sent with the buffered body and its content
+ * length. The body is never copied besides being buffered.
+ *
+ * <p>A body that outgrows the buffer is streamed instead: the buffered
+ * part is written to the response, followed by the rest of the body as
+ * it is written, with no entity-tag. So is a body written in
+ * non-blocking mode, once a {@link WriteListener} has been set. Calls to
+ * <code>flush</code> and <code>flushBuffer</code> are ignored while the
+ * body is buffered, since the response must not be committed before
+ * its entity-tag is known. The entity-tag is only set for responses
+ * whose status code is 200 (OK) and which do not have an
+ * <code>ETag</code> header already.
+ *
+ * <p>Only GET requests are filtered: the responses to HEAD requests
+ * carry no body to hash, so they are passed down the chain unchanged,
+ * and do not get the entity-tag that the response to the matching GET
+ * request gets. Servlets that must return the same metadata for both
+ * should compute the entity-tag themselves, with
+ * {@link HttpServlet#getETag}.
+ *
+ * <p>The filter accepts two initialization parameters:
+ * <code>bufferSize</code>, the maximum length of a buffered body, which
+ * is {@link #DEFAULT_BUFFER_SIZE} by default, and <code>algorithm</code>,
+ * the name of the {@link MessageDigest} algorithm, which is
+ * <code>MD5</code> by default. Entity-tags are strong, and made of the
+ * digest encoded in Base64.
+ *
+ * <p>The response is finished when the filter chain returns. If
+ * asynchronous processing has been started, it is finished when the
+ * application closes the output stream or the writer of the response,
+ * which it must then do.
+ *
+ * @since Servlet 4.1
+ */
+public class ETagFilter extends HttpFilter {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum length of a buffered body by default, 64 kilobytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final String DEFAULT_ALGORITHM = "MD5";
+
+    // the states of an ETagOutputStream
+    private static final int BUFFERING = 0;
+    private static final int STREAMING = 1;
+    private static final int CLOSED = 2;
+
+    private transient int bufferSize = DEFAULT_BUFFER_SIZE;
+    private transient String algorithm = DEFAULT_ALGORITHM;
+    private transient ArrayBlockingQueue<MessageDigest> pool;
+
+    /**
+     * Does nothing, because the filter is initialized by
+     * {@link #init()}.
+     */
+    public ETagFilter() { }
+
+    /**
+     * Reads the initialization parameters of the filter and creates its
+     * pool of message digests.
+     *
+     * @throws ServletException if an initialization parameter is invalid
+     */
+    @Override
+    public void init() throws ServletException {
+        String size = getInitParameter("bufferSize");
+        if (size != null) {
+            try {
+                bufferSize = Integer.parseInt(size.trim());
+            } catch (NumberFormatException e) {
+                bufferSize = -1;
+            }
+            if (bufferSize < 0) {
+                throw invalidParameter("bufferSize", size);
+            }
+        }
+        String name = getInitParameter("algorithm");
+        if (name != null) {
+            algorithm = name.trim();
+        }
+        pool = new ArrayBlockingQueue<MessageDigest>(
+            2 * Runtime.getRuntime().availableProcessors());
+        try {
+            pool.offer(MessageDigest.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw invalidParameter("algorithm", name);
+        }
+    }
+
+    /**
+     * Passes GET requests down the chain with a response that buffers
+     * and hashes its body, and finishes the response once the chain
+     * returns. Other requests are passed down the chain unchanged.
+     *
+     * @param req   the request
+     *
+     * @param res   the response
+     *
+     * @param chain the filter chain
+     *
+     * @throws IOException if an input or output exception occurred
+     *
+     * @throws ServletException if the request could not be processed
+     *
+     * @throws IllegalStateException if the filter has not been
+     * initialized
+     */
+    @Override
+    protected void doFilter(HttpServletRequest req, HttpServletResponse res,
+                            FilterChain chain)
+            throws IOException, ServletException {
+        if (pool == null) {
+            String errMsg = lStrings.getString("err.filter_not_initialized");
+            Object[] errArgs = new Object[1];
+            errArgs[0] = getClass().getName();
+            errMsg = MessageFormat.format(errMsg, errArgs);
+            throw new IllegalStateException(errMsg);
+        }
+        if (HttpMethod.forName(req.getMethod()) != HttpMethod.GET) {
+            chain.doFilter(req, res);
+            return;
+        }
+        ETagResponse response = new ETagResponse(req, res);
+        boolean finished = false;
+        try {
+            chain.doFilter(req, response);
+            if (!req.isAsyncStarted()) {
+                response.finish();
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                response.abort();
+            }
+        }
+    }
+
+    private ServletException invalidParameter(String name, String value) {
+        String errMsg = lStrings.getString("err.init_param_invalid");
+        Object[] errArgs = new Object[2];
+        errArgs[0] = name;
+        errArgs[1] = value;
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new ServletException(errMsg);
+    }
+
+    private MessageDigest takeDigest() {
+        MessageDigest digest = pool.poll();
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                // checked by init
+                throw new IllegalStateException(e);
+            }
+        }
+        return digest;
+    }
+
+    private void returnDigest(MessageDigest digest) {
+        digest.reset();
+        pool.offer(digest);
+    }
+
+    /*
+     * The response passed down the chain.  It keeps the content length
+     * set by the application until it is known whether the body is
+     * buffered.
+     */
+    private class ETagResponse extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private ETagOutputStream outputStream;
+        private ResettablePrintWriter writer;
+        private boolean usingOutputStream;
+        private long contentLength = -1;
+
+        ETagResponse(HttpServletRequest request,
+                     HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (writer != null) {
+                throw new IllegalStateException(
+                    lStrings.getString("err.ise.getOutputStream"));
+            }
+            usingOutputStream = true;
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws UnsupportedEncodingException {
+            if (usingOutputStream) {
+                throw new IllegalStateException(
+                    lStrings.getString("err.ise.getWriter"));
+            }
+            if (writer == null) {
+                writer = new ResettablePrintWriter(stream(),
+                                                   getCharacterEncoding());
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            setContentLengthLong(len);
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            if (outputStream == null || outputStream.state == BUFFERING) {
+                contentLength = len;
+            } else {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream == null || outputStream.state != BUFFERING) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (writer != null) {
+                writer.discard();
+            }
+            if (outputStream != null) {
+                outputStream.restart();
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            // like the response, forget whether the writer or the output
+            // stream was used; the text of the writer is dropped
+            if (writer != null) {
+                writer.discard();
+                writer = null;
+            }
+            usingOutputStream = false;
+            if (outputStream != null) {
+                outputStream.restart();
+            }
+        }
+
+        /*
+         * Completes the body, once the chain has returned.
+         */
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.close();
+            } else if (outputStream != null) {
+                outputStream.close();
+            } else if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+
+        /*
+         * Releases the buffer and the digest after a failure.
+         */
+        void abort() {
+            if (outputStream != null) {
+                try {
+                    outputStream.discard();
+                } catch (IOException e) {
+                    // the failure of the chain is reported instead
+                }
+            }
+        }
+
+        private ETagOutputStream stream() {
+            if (outputStream == null) {
+                outputStream = new ETagOutputStream(this);
+            }
+            return outputStream;
+        }
+
+        /*
+         * Sends the buffered body, or answers with 304 if the entity-tag
+         * computed from the digest matches the If-None-Match header.
+         */
+        void send(ChunkedBuffer buffer, MessageDigest digest)
+                throws IOException {
+            if (getStatus() == SC_OK && !containsHeader(HeaderName.ETAG)
+                    && !isCommitted()) {
+                String etag = '"' + Base64.getEncoder().withoutPadding()
+                    .encodeToString(digest.digest()) + '"';
+                setHeader(HeaderName.ETAG, etag);
+                if (matches(etag)) {
+                    setStatus(SC_NOT_MODIFIED);
+                    return;
+                }
+            }
+            if (!isCommitted()) {
+                super.setContentLengthLong(buffer.size());
+            }
+            buffer.writeTo(getResponse().getOutputStream());
+        }
+
+        /*
+         * Writes the buffered body, with the content length set by the
+         * application, if any, before the rest of the body is streamed.
+         */
+        void stream(ChunkedBuffer buffer) throws IOException {
+            if (contentLength >= 0) {
+                super.setContentLengthLong(contentLength);
+            }
+            buffer.writeTo(getResponse().getOutputStream());
+        }
+
+        private boolean matches(String etag) {
+            Enumeration<String> values =
+                request.getHeaders(HeaderName.IF_NONE_MATCH.getName());
+            if (values == null) {
+                return false;
+            }
+            while (values.hasMoreElements()) {
+                if (EntityTags.matches(values.nextElement(), etag, true)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /*
+     * Buffers and hashes the body until it outgrows the buffer, and then
+     * streams it to the output stream of the response.
+     */
+    private class ETagOutputStream extends ServletOutputStream {
+
+        private final ETagResponse response;
+        private ServletOutputStream target;
+        private final ChunkedBuffer buffer = new ChunkedBuffer(-1);
+        private MessageDigest digest;
+        private int state = BUFFERING;
+
+        ETagOutputStream(ETagResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (state == BUFFERING) {
+                if (buffer.size() < bufferSize) {
+                    buffer.write(b);
+                    digest().update((byte) b);
+                    return;
+                }
+                startStreaming();
+            }
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte buf[], int offset, int len)
+            throws IOException
+        {
+            if (buf == null) {
+                throw new NullPointerException(
+                        lStrings.getString("err.io.nullArray"));
+            }
+
+            if (offset < 0 || len < 0 || offset+len > buf.length) {
+                String msg = lStrings.getString("err.io.indexOutOfBounds");
+                Object[] msgArgs = new Object[3];
+                msgArgs[0] = Integer.valueOf(offset);
+                msgArgs[1] = Integer.valueOf(len);
+                msgArgs[2] = Integer.valueOf(buf.length);
+                msg = MessageFormat.format(msg, msgArgs);
+                throw new IndexOutOfBoundsException(msg);
+            }
+
+            if (state == BUFFERING) {
+                if (buffer.size() + len <= bufferSize) {
+                    buffer.write(buf, offset, len);
+                    digest().update(buf, offset, len);
+                    return;
+                }
+                startStreaming();
+            }
+            target().write(buf, offset, len);
+        }
+
+        /*
+         * Ignored while the body is buffered.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (state == STREAMING) {
+                target().flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (state == CLOSED) {
+                return;
+            }
+            try {
+                if (state == BUFFERING) {
+                    response.send(buffer, digest());
+                }
+                state = CLOSED;
+                target().close();
+            } finally {
+                state = CLOSED;
+                discard();
+            }
+        }
+
+        /*
+         * Always ready while the body is buffered, since the body is only
+         * buffered in blocking mode.
+         */
+        @Override
+        public boolean isReady() {
+            if (state == BUFFERING) {
+                return true;
+            }
+            try {
+                return target().isReady();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /*
+         * Streams the body: in non-blocking mode, the response cannot
+         * wait for the whole body before being committed.
+         */
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (writeListener == null) {
+                throw new NullPointerException(
+                    "WriteListener cannot be null");
+            }
+            try {
+                if (state == BUFFERING) {
+                    startStreaming();
+                }
+                target().setWriteListener(writeListener);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void startStreaming() throws IOException {
+            state = STREAMING;
+            try {
+                response.stream(buffer);
+            } finally {
+                discard();
+            }
+        }
+
+        /*
+         * Drops the body buffered so far, after the buffer of the response
+         * has been reset.
+         */
+        void restart() {
+            if (state == BUFFERING) {
+                try {
+                    buffer.release();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (digest != null) {
+                    digest.reset();
+                }
+            }
+        }
+
+        /*
+         * Returns the chunks of the buffer and the digest to their pools.
+         */
+        void discard() throws IOException {
+            if (digest != null) {
+                returnDigest(digest);
+                digest = null;
+            }
+            buffer.release();
+        }
+
+        private MessageDigest digest() {
+            if (digest == null) {
+                digest = takeDigest();
+            }
+            return digest;
+        }
+
+        private ServletOutputStream target() throws IOException {
+            if (target == null) {
+                target = response.getResponse().getOutputStream();
+            }
+            return target;
+        }
+    }
+}
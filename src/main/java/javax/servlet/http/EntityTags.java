@@ -0,0 +1,124 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+/*
+ * Matching of entity-tags against the values of the If-Match and
+ * If-None-Match request headers, as defined by RFC 7232.  The header
+ * values are scanned in place, so no strings are created while matching.
+ */
+// file private
+final class EntityTags {
+
+    private EntityTags() { }
+
+    /*
+     * Tests whether the given entity-tag matches one of the entity-tags
+     * listed in the given If-Match or If-None-Match header value.  The
+     * value "*" matches any entity-tag.
+     *
+     * With the strong comparison function (RFC 7232, section 2.3.2) two
+     * entity-tags only match if neither is weak and their opaque tags
+     * are identical; with the weak comparison function the opaque tags
+     * are compared regardless of either being weak.
+     */
+    static boolean matches(String header, String etag, boolean weak) {
+        boolean etagWeak = etag.startsWith("W/");
+        int etagStart = etagWeak ? 2 : 0;
+        int etagEnd = etag.length();
+        if (etagEnd - etagStart >= 2 && etag.charAt(etagStart) == '"'
+                && etag.charAt(etagEnd - 1) == '"') {
+            etagStart++;
+            etagEnd--;
+        }
+        if (etagWeak && !weak) {
+            // a weak entity-tag never matches using strong comparison,
+            // but "*" still does
+            return isWildcard(header);
+        }
+        int etagLength = etagEnd - etagStart;
+
+        int len = header.length();
+        int pos = 0;
+        while (pos < len) {
+            char c = header.charAt(pos);
+            if (c == ' ' || c == '\t' || c == ',') {
+                pos++;
+                continue;
+            }
+            if (c == '*') {
+                return true;
+            }
+
+            boolean tagWeak = false;
+            if (c == 'W' && header.startsWith("W/", pos)) {
+                tagWeak = true;
+                pos += 2;
+            }
+            if (pos >= len || header.charAt(pos) != '"') {
+                // not an entity-tag; skip to the next list element
+                while (pos < len && header.charAt(pos) != ',') {
+                    pos++;
+                }
+                continue;
+            }
+            int tagStart = ++pos;
+            while (pos < len && header.charAt(pos) != '"') {
+                pos++;
+            }
+            int tagEnd = pos++;
+
+            if ((weak || !tagWeak) && tagEnd - tagStart == etagLength
+                    && header.regionMatches(tagStart, etag, etagStart,
+                                            etagLength)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Tests whether the given header value is "*".
+     */
+    private static boolean isWildcard(String header) {
+        return header.trim().equals("*");
+    }
+}
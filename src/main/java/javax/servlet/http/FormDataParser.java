@@ -0,0 +1,392 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+
+/**
+ * Parses an <code>application/x-www-form-urlencoded</code> request body
+ * incrementally, as its bytes arrive.
+ *
+ * <p>The body is passed to the parser in chunks of any size, with
+ * {@link #update}. Each name and value is percent-decoded as its bytes
+ * arrive and converted to a string, in the character set of the parser,
+ * once it is complete, so that only the name or value being parsed is
+ * buffered and never the body as a whole. The number of bytes and the
+ * number of parameters accepted can both be limited.
+ *
+ * <p>A body can be read and parsed in blocking mode with
+ * {@link #parse(ServletInputStream)}. In non-blocking mode,
+ * {@link #readAvailable} reads and parses whatever can be read without
+ * blocking, and {@link #finish} completes parsing once all the data has
+ * been read:
+ *
+ * <pre>
+ * final FormDataParser parser = FormDataParser.forRequest(req, 65536, 256);
+ * final ServletInputStream in = req.getInputStream();
+ * in.setReadListener(new ReadListener() {
+ *     public void onDataAvailable() throws IOException {
+ *         parser.readAvailable(in);
+ *     }
+ *     public void onAllDataRead() throws IOException {
+ *         Map&lt;String, String[]&gt; parameters = parser.finish();
+ *         ...
+ *     }
+ *     ...
+ * });
+ * </pre>
+ *
+ * <p>Instances of this class are not thread-safe, and parse a single body.
+ *
+ * @see HttpUtils#parsePostData
+ *
+ * @since Servlet 4.1
+ */
+public class FormDataParser {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Charset charset;
+    private final long maxLength;
+    private final int maxParameters;
+
+    private final Map<String, List<String>> parameters =
+        new LinkedHashMap<String, List<String>>();
+    private int parameterCount;
+    private long length;
+
+    // the bytes of the name or value being parsed, already decoded
+    private byte[] token = new byte[64];
+    private int tokenLength;
+
+    private String name;        // the name of the current pair, once known
+    private int escape;         // position within an escape sequence
+    private int escapeHigh;     // first digit of the escape sequence
+
+    private byte[] buffer;
+    private Map<String, String[]> result;
+
+    /**
+     * Creates a parser decoding names and values in the given character
+     * set.
+     *
+     * @param charset       the character set of the body
+     *
+     * @param maxLength     the maximum number of bytes accepted, or -1
+     *                      for no limit
+     *
+     * @param maxParameters the maximum number of name-value pairs
+     *                      accepted, or -1 for no limit
+     *
+     * @throws NullPointerException if <code>charset</code> is null
+     */
+    public FormDataParser(Charset charset, long maxLength, int maxParameters) {
+        if (charset == null) {
+            throw new NullPointerException("Charset cannot be null");
+        }
+        this.charset = charset;
+        this.maxLength = maxLength;
+        this.maxParameters = maxParameters;
+    }
+
+    /**
+     * Creates a parser for the body of the given request, decoding names
+     * and values in the character encoding of the request, or in
+     * ISO-8859-1 if the request does not specify one.
+     *
+     * @param request       the request whose body is to be parsed
+     *
+     * @param maxLength     the maximum number of bytes accepted, or -1
+     *                      for no limit
+     *
+     * @param maxParameters the maximum number of name-value pairs
+     *                      accepted, or -1 for no limit
+     *
+     * @return a new parser
+     *
+     * @throws UnsupportedEncodingException if the character encoding of
+     *  the request is not supported
+     *
+     * @throws IllegalStateException if the content length of the request
+     *  exceeds <code>maxLength</code>
+     */
+    public static FormDataParser forRequest(ServletRequest request,
+                                            long maxLength, int maxParameters)
+            throws UnsupportedEncodingException {
+        Charset charset = StandardCharsets.ISO_8859_1;
+        String encoding = request.getCharacterEncoding();
+        if (encoding != null) {
+            try {
+                charset = Charset.forName(encoding);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                throw new UnsupportedEncodingException(encoding);
+            }
+        }
+        FormDataParser parser =
+            new FormDataParser(charset, maxLength, maxParameters);
+        long contentLength = request.getContentLengthLong();
+        if (maxLength >= 0 && contentLength > maxLength) {
+            throw parser.limitExceeded("err.form.too_large", maxLength);
+        }
+        return parser;
+    }
+
+    /**
+     * Parses the next chunk of the body.
+     *
+     * @param b     the array holding the bytes of the chunk
+     *
+     * @param off   the offset of the chunk in the array
+     *
+     * @param len   the number of bytes in the chunk
+     *
+     * @throws IllegalArgumentException if the body contains a malformed
+     *  escape sequence
+     *
+     * @throws IllegalStateException if the body exceeds the maximum length
+     *  or number of parameters, or if parsing has been finished
+     */
+    public void update(byte[] b, int off, int len) {
+        if (result != null) {
+            throw new IllegalStateException(
+                lStrings.getString("err.form.finished"));
+        }
+        length += len;
+        if (maxLength >= 0 && length > maxLength) {
+            throw limitExceeded("err.form.too_large", maxLength);
+        }
+
+        for (int i = off, end = off + len; i < end; i++) {
+            byte c = b[i];
+            if (escape == 1) {
+                escapeHigh = hexDigit(c);
+                escape = 2;
+            } else if (escape == 2) {
+                append((byte) ((escapeHigh << 4) + hexDigit(c)));
+                escape = 0;
+            } else if (c == '%') {
+                escape = 1;
+            } else if (c == '+') {
+                append((byte) ' ');
+            } else if (c == '=' && name == null) {
+                name = new String(token, 0, tokenLength, charset);
+                tokenLength = 0;
+            } else if (c == '&') {
+                endPair();
+            } else {
+                append(c);
+            }
+        }
+    }
+
+    /**
+     * Reads and parses the data of the given stream that is available
+     * without blocking, that is, as long as {@link ServletInputStream#isReady}
+     * returns <code>true</code>. This method is meant to be called from
+     * {@link ReadListener#onDataAvailable}.
+     *
+     * @param in    the input stream of the request
+     *
+     * @return <code>true</code> if the end of the stream has been reached
+     *
+     * @throws IOException if an input or output exception has occurred
+     *
+     * @throws IllegalArgumentException if the body contains a malformed
+     *  escape sequence
+     *
+     * @throws IllegalStateException if the body exceeds the maximum length
+     *  or number of parameters
+     */
+    public boolean readAvailable(ServletInputStream in) throws IOException {
+        byte[] buf = getBuffer();
+        while (in.isReady()) {
+            int n = in.read(buf, 0, buf.length);
+            if (n == -1) {
+                return true;
+            }
+            update(buf, 0, n);
+        }
+        return in.isFinished();
+    }
+
+    /**
+     * Reads the given stream up to its end, parses its data, and finishes
+     * parsing. This method blocks until all the data has been read.
+     *
+     * @param in    the input stream of the request
+     *
+     * @return the parameters, as returned by {@link #finish}
+     *
+     * @throws IOException if an input or output exception has occurred
+     *
+     * @throws IllegalArgumentException if the body contains a malformed
+     *  escape sequence
+     *
+     * @throws IllegalStateException if the body exceeds the maximum length
+     *  or number of parameters
+     */
+    public Map<String, String[]> parse(ServletInputStream in)
+            throws IOException {
+        byte[] buf = getBuffer();
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) != -1) {
+            update(buf, 0, n);
+        }
+        return finish();
+    }
+
+    /**
+     * Completes parsing, once all the body has been passed to the parser,
+     * and returns the parameters. Calling this method again returns the
+     * same parameters.
+     *
+     * @return an unmodifiable map from each parameter name to all of its
+     *  values, ordered by the first occurrence of each name in the body
+     *
+     * @throws IllegalArgumentException if the body ends with an incomplete
+     *  escape sequence
+     *
+     * @throws IllegalStateException if the body exceeds the maximum number
+     *  of parameters
+     */
+    public Map<String, String[]> finish() {
+        if (result == null) {
+            if (escape != 0) {
+                throw invalidEscape();
+            }
+            endPair();
+            Map<String, String[]> map = new LinkedHashMap<String, String[]>();
+            for (Map.Entry<String, List<String>> e : parameters.entrySet()) {
+                List<String> values = e.getValue();
+                map.put(e.getKey(), values.toArray(new String[values.size()]));
+            }
+            result = Collections.unmodifiableMap(map);
+            buffer = null;
+            token = null;
+        }
+        return result;
+    }
+
+    /*
+     * Adds the pair that has just been parsed, if it is not empty.
+     */
+    private void endPair() {
+        String value;
+        if (name != null) {
+            value = new String(token, 0, tokenLength, charset);
+        } else if (tokenLength > 0) {
+            name = new String(token, 0, tokenLength, charset);
+            value = "";
+        } else {
+            return;
+        }
+
+        if (maxParameters >= 0 && parameterCount == maxParameters) {
+            throw limitExceeded("err.form.too_many_parameters", maxParameters);
+        }
+        parameterCount++;
+        List<String> values = parameters.get(name);
+        if (values == null) {
+            values = new ArrayList<String>(1);
+            parameters.put(name, values);
+        }
+        values.add(value);
+
+        name = null;
+        tokenLength = 0;
+    }
+
+    private void append(byte c) {
+        if (tokenLength == token.length) {
+            token = Arrays.copyOf(token, 2 * tokenLength);
+        }
+        token[tokenLength++] = c;
+    }
+
+    private int hexDigit(byte c) {
+        int digit = Character.digit((char) c, 16);
+        if (digit == -1) {
+            throw invalidEscape();
+        }
+        return digit;
+    }
+
+    private byte[] getBuffer() {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        return buffer;
+    }
+
+    private IllegalArgumentException invalidEscape() {
+        return new IllegalArgumentException(
+            lStrings.getString("err.form.invalid_escape"));
+    }
+
+    private IllegalStateException limitExceeded(String key, long limit) {
+        String errMsg = lStrings.getString(key);
+        Object[] errArgs = new Object[1];
+        errArgs[0] = String.valueOf(limit);
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new IllegalStateException(errMsg);
+    }
+}
@@ -0,0 +1,460 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+
+/**
+ * The name of an HTTP header field.
+ *
+ * <p>Header names are case-insensitive. A <code>HeaderName</code>
+ * computes its case-insensitive hash code and its lower-case forms, as a
+ * string and as bytes, once, so that looking up and writing headers by
+ * name does not need to compare or convert strings again.
+ *
+ * <p>The standard headers are registered as constants, each with a
+ * small index that containers may use to keep the values of these
+ * headers in an array. {@link #of} returns the registered constant for
+ * any spelling of a standard header name, without allocating.
+ *
+ * @see HttpServletRequest#getHeader(HeaderName)
+ * @see HttpServletResponse#setHeader(HeaderName, String)
+ *
+ * @since Servlet 4.1
+ */
+public final class HeaderName {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // the registry: an open-addressing hash table, and the constants in
+    // the order of their indexes
+    private static final HeaderName[] TABLE = new HeaderName[128];
+    private static final HeaderName[] STANDARD = new HeaderName[64];
+    private static int count;
+
+    /** The <code>Accept</code> header. */
+    public static final HeaderName ACCEPT = register("Accept");
+
+    /** The <code>Accept-Charset</code> header. */
+    public static final HeaderName ACCEPT_CHARSET =
+        register("Accept-Charset");
+
+    /** The <code>Accept-Encoding</code> header. */
+    public static final HeaderName ACCEPT_ENCODING =
+        register("Accept-Encoding");
+
+    /** The <code>Accept-Language</code> header. */
+    public static final HeaderName ACCEPT_LANGUAGE =
+        register("Accept-Language");
+
+    /** The <code>Accept-Ranges</code> header. */
+    public static final HeaderName ACCEPT_RANGES = register("Accept-Ranges");
+
+    /** The <code>Age</code> header. */
+    public static final HeaderName AGE = register("Age");
+
+    /** The <code>Allow</code> header. */
+    public static final HeaderName ALLOW = register("Allow");
+
+    /** The <code>Authorization</code> header. */
+    public static final HeaderName AUTHORIZATION = register("Authorization");
+
+    /** The <code>Cache-Control</code> header. */
+    public static final HeaderName CACHE_CONTROL = register("Cache-Control");
+
+    /** The <code>Connection</code> header. */
+    public static final HeaderName CONNECTION = register("Connection");
+
+    /** The <code>Content-Disposition</code> header. */
+    public static final HeaderName CONTENT_DISPOSITION =
+        register("Content-Disposition");
+
+    /** The <code>Content-Encoding</code> header. */
+    public static final HeaderName CONTENT_ENCODING =
+        register("Content-Encoding");
+
+    /** The <code>Content-Language</code> header. */
+    public static final HeaderName CONTENT_LANGUAGE =
+        register("Content-Language");
+
+    /** The <code>Content-Length</code> header. */
+    public static final HeaderName CONTENT_LENGTH =
+        register("Content-Length");
+
+    /** The <code>Content-Location</code> header. */
+    public static final HeaderName CONTENT_LOCATION =
+        register("Content-Location");
+
+    /** The <code>Content-Range</code> header. */
+    public static final HeaderName CONTENT_RANGE = register("Content-Range");
+
+    /** The <code>Content-Type</code> header. */
+    public static final HeaderName CONTENT_TYPE = register("Content-Type");
+
+    /** The <code>Cookie</code> header. */
+    public static final HeaderName COOKIE = register("Cookie");
+
+    /** The <code>Date</code> header. */
+    public static final HeaderName DATE = register("Date");
+
+    /** The <code>ETag</code> header. */
+    public static final HeaderName ETAG = register("ETag");
+
+    /** The <code>Expect</code> header. */
+    public static final HeaderName EXPECT = register("Expect");
+
+    /** The <code>Expires</code> header. */
+    public static final HeaderName EXPIRES = register("Expires");
+
+    /** The <code>Forwarded</code> header. */
+    public static final HeaderName FORWARDED = register("Forwarded");
+
+    /** The <code>Host</code> header. */
+    public static final HeaderName HOST = register("Host");
+
+    /** The <code>If-Match</code> header. */
+    public static final HeaderName IF_MATCH = register("If-Match");
+
+    /** The <code>If-Modified-Since</code> header. */
+    public static final HeaderName IF_MODIFIED_SINCE =
+        register("If-Modified-Since");
+
+    /** The <code>If-None-Match</code> header. */
+    public static final HeaderName IF_NONE_MATCH = register("If-None-Match");
+
+    /** The <code>If-Range</code> header. */
+    public static final HeaderName IF_RANGE = register("If-Range");
+
+    /** The <code>If-Unmodified-Since</code> header. */
+    public static final HeaderName IF_UNMODIFIED_SINCE =
+        register("If-Unmodified-Since");
+
+    /** The <code>Last-Modified</code> header. */
+    public static final HeaderName LAST_MODIFIED = register("Last-Modified");
+
+    /** The <code>Link</code> header. */
+    public static final HeaderName LINK = register("Link");
+
+    /** The <code>Location</code> header. */
+    public static final HeaderName LOCATION = register("Location");
+
+    /** The <code>Origin</code> header. */
+    public static final HeaderName ORIGIN = register("Origin");
+
+    /** The <code>Pragma</code> header. */
+    public static final HeaderName PRAGMA = register("Pragma");
+
+    /** The <code>Range</code> header. */
+    public static final HeaderName RANGE = register("Range");
+
+    /** The <code>Referer</code> header. */
+    public static final HeaderName REFERER = register("Referer");
+
+    /** The <code>Retry-After</code> header. */
+    public static final HeaderName RETRY_AFTER = register("Retry-After");
+
+    /** The <code>Server</code> header. */
+    public static final HeaderName SERVER = register("Server");
+
+    /** The <code>Set-Cookie</code> header. */
+    public static final HeaderName SET_COOKIE = register("Set-Cookie");
+
+    /** The <code>TE</code> header. */
+    public static final HeaderName TE = register("TE");
+
+    /** The <code>Trailer</code> header. */
+    public static final HeaderName TRAILER = register("Trailer");
+
+    /** The <code>Transfer-Encoding</code> header. */
+    public static final HeaderName TRANSFER_ENCODING =
+        register("Transfer-Encoding");
+
+    /** The <code>Upgrade</code> header. */
+    public static final HeaderName UPGRADE = register("Upgrade");
+
+    /** The <code>User-Agent</code> header. */
+    public static final HeaderName USER_AGENT = register("User-Agent");
+
+    /** The <code>Vary</code> header. */
+    public static final HeaderName VARY = register("Vary");
+
+    /** The <code>Via</code> header. */
+    public static final HeaderName VIA = register("Via");
+
+    /** The <code>WWW-Authenticate</code> header. */
+    public static final HeaderName WWW_AUTHENTICATE =
+        register("WWW-Authenticate");
+
+    private final String name;
+    private final String lowerCaseName;
+    private final byte[] lowerCaseBytes;
+    private final int hash;
+    private final int index;
+
+    private HeaderName(String name, int index) {
+        this.name = name;
+        this.lowerCaseName = toLowerCase(name);
+        this.lowerCaseBytes =
+            lowerCaseName.getBytes(StandardCharsets.ISO_8859_1);
+        this.hash = hash(name);
+        this.index = index;
+    }
+
+    private static HeaderName register(String name) {
+        HeaderName headerName = new HeaderName(name, count);
+        STANDARD[count++] = headerName;
+        int slot = headerName.hash & (TABLE.length - 1);
+        while (TABLE[slot] != null) {
+            slot = (slot + 1) & (TABLE.length - 1);
+        }
+        TABLE[slot] = headerName;
+        return headerName;
+    }
+
+    /**
+     * Returns the header name for the given string. For the name of a
+     * standard header, in any case, the registered constant is returned
+     * and nothing is allocated; for any other name, a new
+     * <code>HeaderName</code> is returned.
+     *
+     * @param name the name of the header
+     *
+     * @return the header name
+     *
+     * @throws IllegalArgumentException if the name is not a token, as
+     * required of header names by RFC 7230
+     */
+    public static HeaderName of(String name) {
+        HeaderName headerName = lookup(name);
+        if (headerName != null) {
+            return headerName;
+        }
+        if (!HttpTokens.isToken(name)) {
+            String errMsg = lStrings.getString("err.header_name_invalid");
+            Object[] errArgs = new Object[1];
+            errArgs[0] = name;
+            errMsg = MessageFormat.format(errMsg, errArgs);
+            throw new IllegalArgumentException(errMsg);
+        }
+        return new HeaderName(name, -1);
+    }
+
+    /**
+     * Returns the registered constant for the given name, in any case.
+     *
+     * @param name the name of the header
+     *
+     * @return the constant, or <code>null</code> if the name is not the
+     * name of a standard header
+     */
+    public static HeaderName lookup(CharSequence name) {
+        int slot = hash(name) & (TABLE.length - 1);
+        HeaderName headerName;
+        while ((headerName = TABLE[slot]) != null) {
+            if (headerName.matches(name)) {
+                return headerName;
+            }
+            slot = (slot + 1) & (TABLE.length - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of registered standard header names. Their
+     * indexes range from zero to this number, exclusive.
+     *
+     * @return the number of standard header names
+     */
+    public static int getStandardCount() {
+        return count;
+    }
+
+    /**
+     * Returns the standard header name with the given index.
+     *
+     * @param index the index of the header name
+     *
+     * @return the header name
+     *
+     * @throws IndexOutOfBoundsException if there is no standard header
+     * name with the given index
+     */
+    public static HeaderName getStandard(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return STANDARD[index];
+    }
+
+    /**
+     * Returns the name of the header, in its canonical case.
+     *
+     * @return the name of the header
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the name of the header in lower case, as HTTP/2 requires.
+     *
+     * @return the lower-case name of the header
+     */
+    public String getLowerCaseName() {
+        return lowerCaseName;
+    }
+
+    /**
+     * Returns the name of the header in lower case, encoded as
+     * ISO-8859-1. The returned buffer is read-only and shares its content
+     * with this header name, but has a position and limit of its own.
+     *
+     * @return a read-only buffer holding the lower-case name
+     */
+    public ByteBuffer getLowerCaseBytes() {
+        return ByteBuffer.wrap(lowerCaseBytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the index of this header name, if it is a standard header
+     * name.
+     *
+     * @return the index, or -1 if this is not a standard header name
+     *
+     * @see #getStandard
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns whether the given sequence is this header name, ignoring
+     * case.
+     *
+     * @param s the sequence to compare
+     *
+     * @return <code>true</code> if the sequence equals this header name,
+     * ignoring case
+     */
+    public boolean matches(CharSequence s) {
+        String lower = lowerCaseName;
+        int len = lower.length();
+        if (s.length() != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (toLowerCase(s.charAt(i)) != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares this header name to another object. Header names are
+     * equal if their names are equal, ignoring case.
+     *
+     * @param obj the object to compare
+     *
+     * @return <code>true</code> if the object is an equal header name
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof HeaderName)) {
+            return false;
+        }
+        HeaderName other = (HeaderName) obj;
+        return hash == other.hash && lowerCaseName.equals(other.lowerCaseName);
+    }
+
+    /**
+     * Returns the case-insensitive hash code of this header name.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the name of the header.
+     *
+     * @return the name of the header
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /*
+     * Header names are ASCII, so only ASCII letters are folded.
+     */
+    private static char toLowerCase(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static String toLowerCase(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    private static int hash(CharSequence s) {
+        int h = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + toLowerCase(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+/**
+ * Formatting and parsing of HTTP dates, as defined by RFC 7231,
+ * section 7.1.1.1.
+ *
+ * <p>Dates are formatted in the preferred IMF-fixdate format, for
+ * example <code>Sun, 06 Nov 1994 08:49:37 GMT</code>. The most recently
+ * formatted value is kept, so that formatting the same second again, as
+ * the <code>Date</code> header and the <code>Last-Modified</code> header
+ * of a static resource do, returns the same string without formatting.
+ *
+ * <p>Parsing accepts the three formats a recipient must accept: the
+ * IMF-fixdate format, the obsolete RFC 850 format, for example
+ * <code>Sunday, 06-Nov-94 08:49:37 GMT</code>, and the format of ANSI
+ * C's <code>asctime()</code>, for example
+ * <code>Sun Nov  6 08:49:37 1994</code>. Dates are parsed in place,
+ * without allocating.
+ *
+ * <p>All methods may be called concurrently from any number of threads.
+ *
+ * @since Servlet 4.1
+ */
+public final class HttpDates {
+
+    private static final String[] DAYS = {
+        "Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"
+    };
+
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+        "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    // the most recently formatted date
+    private static volatile Formatted last = new Formatted(0, formatSeconds(0));
+
+    private HttpDates() { }
+
+    /**
+     * Formats the given time as an HTTP date in the IMF-fixdate format.
+     * Milliseconds are dropped.
+     *
+     * @param millis the time, in milliseconds since the epoch
+     *
+     * @return the formatted date
+     */
+    public static String format(long millis) {
+        long seconds = Math.floorDiv(millis, 1000L);
+        Formatted formatted = last;
+        if (formatted.seconds != seconds) {
+            formatted = new Formatted(seconds, formatSeconds(seconds));
+            last = formatted;
+        }
+        return formatted.value;
+    }
+
+    /**
+     * Parses an HTTP date in any of the three formats of RFC 7231.
+     *
+     * @param s the date to parse
+     *
+     * @return the time, in milliseconds since the epoch, or -1 if the
+     * date is not in any of the three formats or is not a valid date
+     */
+    public static long parse(CharSequence s) {
+        int len = s.length();
+        int i = 0;
+        while (i < len && isLetter(s.charAt(i))) {
+            i++;
+        }
+        if (i < 3 || i == len) {
+            return -1;
+        }
+        if (s.charAt(i) == ' ') {
+            return parseAsctime(s, i + 1);
+        }
+        if (s.charAt(i) != ',' || i + 1 == len || s.charAt(i + 1) != ' ') {
+            return -1;
+        }
+        i += 2;
+        // dd Mon yyyy or dd-Mon-yy
+        if (i + 2 < len && s.charAt(i + 2) == '-') {
+            return parseRfc850(s, i);
+        }
+        return parseFixdate(s, i);
+    }
+
+    /*
+     * Parses "06 Nov 1994 08:49:37 GMT", after the day name.
+     */
+    private static long parseFixdate(CharSequence s, int i) {
+        if (s.length() != i + 24 || s.charAt(i + 2) != ' '
+                || s.charAt(i + 6) != ' ' || s.charAt(i + 11) != ' '
+                || !endsWithGMT(s, i + 20)) {
+            return -1;
+        }
+        int day = digits(s, i, 2);
+        int month = month(s, i + 3);
+        int year = digits(s, i + 7, 4);
+        return toMillis(year, month, day, s, i + 12);
+    }
+
+    /*
+     * Parses "06-Nov-94 08:49:37 GMT", after the day name.
+     */
+    private static long parseRfc850(CharSequence s, int i) {
+        if (s.length() != i + 22 || s.charAt(i + 6) != '-'
+                || s.charAt(i + 9) != ' ' || !endsWithGMT(s, i + 18)) {
+            return -1;
+        }
+        int day = digits(s, i, 2);
+        int month = month(s, i + 3);
+        int year = digits(s, i + 7, 2);
+        if (year < 0) {
+            return -1;
+        }
+        // RFC 7231: a year more than 50 years in the future is taken to
+        // be the most recent year in the past with the same last digits
+        long now = Math.floorDiv(System.currentTimeMillis(),
+                                 SECONDS_PER_DAY * 1000L);
+        int currentYear = (int) yearOfDay(now);
+        year += currentYear - currentYear % 100;
+        if (year > currentYear + 50) {
+            year -= 100;
+        }
+        return toMillis(year, month, day, s, i + 10);
+    }
+
+    /*
+     * Parses "Nov  6 08:49:37 1994", after the day name.
+     */
+    private static long parseAsctime(CharSequence s, int i) {
+        if (s.length() != i + 20 || s.charAt(i + 3) != ' '
+                || s.charAt(i + 6) != ' ' || s.charAt(i + 15) != ' ') {
+            return -1;
+        }
+        int month = month(s, i);
+        int day = (s.charAt(i + 4) == ' ')
+            ? digits(s, i + 5, 1) : digits(s, i + 4, 2);
+        int year = digits(s, i + 16, 4);
+        return toMillis(year, month, day, s, i + 7);
+    }
+
+    /*
+     * Completes parsing with the time of day "08:49:37" at position i.
+     */
+    private static long toMillis(int year, int month, int day,
+                                 CharSequence s, int i) {
+        if (s.charAt(i + 2) != ':' || s.charAt(i + 5) != ':') {
+            return -1;
+        }
+        int hour = digits(s, i, 2);
+        int minute = digits(s, i + 3, 2);
+        int second = digits(s, i + 6, 2);
+        if (year < 0 || month < 0 || day < 1 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60
+                || day > daysInMonth(year, month)) {
+            return -1;
+        }
+        // a leap second is taken as the last second of the minute
+        if (second == 60) {
+            second = 59;
+        }
+        long days = daysFromCivil(year, month + 1, day);
+        return ((days * SECONDS_PER_DAY) + hour * 3600 + minute * 60
+                + second) * 1000L;
+    }
+
+    private static boolean endsWithGMT(CharSequence s, int i) {
+        return s.charAt(i) == ' ' && s.charAt(i + 1) == 'G'
+            && s.charAt(i + 2) == 'M' && s.charAt(i + 3) == 'T';
+    }
+
+    /*
+     * Returns the number formed by the given count of digits, or -1.
+     */
+    private static int digits(CharSequence s, int i, int count) {
+        int value = 0;
+        for (int j = i; j < i + count; j++) {
+            char c = s.charAt(j);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /*
+     * Returns the zero-based month of the three-letter name at the given
+     * position, or -1.  Month names are case-sensitive.
+     */
+    private static int month(CharSequence s, int i) {
+        char c0 = s.charAt(i);
+        char c1 = s.charAt(i + 1);
+        char c2 = s.charAt(i + 2);
+        for (int m = 0; m < 12; m++) {
+            String name = MONTHS[m];
+            if (name.charAt(0) == c0 && name.charAt(1) == c1
+                    && name.charAt(2) == c2) {
+                return m;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+        case 1:
+            boolean leap = (year % 4 == 0)
+                && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        case 3: case 5: case 8: case 10:
+            return 30;
+        default:
+            return 31;
+        }
+    }
+
+    /*
+     * Formats the given number of seconds since the epoch.
+     */
+    private static String formatSeconds(long seconds) {
+        long days = Math.floorDiv(seconds, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(seconds, SECONDS_PER_DAY);
+
+        // civil date from days since the epoch, proleptic Gregorian
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + ((month <= 2) ? 1 : 0);
+
+        StringBuilder sb = new StringBuilder(29);
+        sb.append(DAYS[(int) Math.floorMod(days + 3, 7L)]).append(", ");
+        append2(sb, day);
+        sb.append(' ').append(MONTHS[month - 1]).append(' ');
+        if (year >= 0 && year < 1000) {
+            sb.append(year < 10 ? "000" : year < 100 ? "00" : "0");
+        }
+        sb.append(year).append(' ');
+        append2(sb, secondOfDay / 3600);
+        sb.append(':');
+        append2(sb, secondOfDay / 60 % 60);
+        sb.append(':');
+        append2(sb, secondOfDay % 60);
+        return sb.append(" GMT").toString();
+    }
+
+    private static void append2(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /*
+     * Returns the year of the given day since the epoch.
+     */
+    private static long yearOfDay(long days) {
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        return yoe + era * 400 + ((mp >= 10) ? 1 : 0);
+    }
+
+    /*
+     * Returns the number of days since the epoch of the given date, with
+     * a one-based month.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = (month <= 2) ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int mp = (month > 2) ? month - 3 : month + 9;
+        int doy = (153 * mp + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static final class Formatted {
+
+        final long seconds;
+        final String value;
+
+        Formatted(long seconds, String value) {
+            this.seconds = seconds;
+            this.value = value;
+        }
+    }
+}
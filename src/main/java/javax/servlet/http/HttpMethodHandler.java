@@ -0,0 +1,82 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+
+/**
+ * Handles requests for an HTTP extension method that an {@link HttpServlet}
+ * does not provide a <code>do</code><i>XXX</i> method for, such as a
+ * WebDAV method.
+ *
+ * <p>Handlers are registered with
+ * {@link HttpServlet#addMethodHandler(String, HttpMethodHandler)}, usually
+ * from the servlet's <code>init</code> method, and are invoked by
+ * {@link HttpServlet#service(HttpServletRequest, HttpServletResponse)}
+ * for requests using that method.</p>
+ *
+ * @see HttpServlet#addMethodHandler(String, HttpMethodHandler)
+ *
+ * @since Servlet 4.1
+ */
+public interface HttpMethodHandler {
+
+    /**
+     * Handles a request for the extension method this handler has been
+     * registered for.
+     *
+     * @param req   the {@link HttpServletRequest} object that
+     *                  contains the request the client made of
+     *                  the servlet
+     *
+     * @param resp  the {@link HttpServletResponse} object that
+     *                  contains the response the servlet returns
+     *                  to the client
+     *
+     * @throws IOException   if an input or output error occurs
+     *                              while the request is handled
+     *
+     * @throws ServletException  if the request cannot be handled
+     */
+    public void handle(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException;
+}
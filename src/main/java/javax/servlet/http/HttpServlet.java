@@ -23,7 +23,10 @@ import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 import javax.servlet.*;
@@ -41,6 +44,7 @@ import javax.servlet.*;
  * <li> <code>doPost</code>, for HTTP POST requests
  * <li> <code>doPut</code>, for HTTP PUT requests
  * <li> <code>doDelete</code>, for HTTP DELETE requests
+ * <li> <code>doPatch</code>, for HTTP PATCH requests
  * <li> <code>init</code> and <code>destroy</code>, 
  * to manage resources that are held for the life of the servlet
  * <li> <code>getServletInfo</code>, which the servlet uses to
@@ -55,6 +59,10 @@ import javax.servlet.*;
  *
  * <p>Likewise, there's almost no reason to override the 
  * <code>doOptions</code> and <code>doTrace</code> methods.
+ *
+ * <p>Requests for HTTP methods that have no <code>do</code><i>XXX</i>
+ * method, such as WebDAV methods, can be handled by registering an
+ * {@link HttpMethodHandler} with {@link #addMethodHandler}.
  * 
  * <p>Servlets typically run on multithreaded servers,
  * so be aware that a servlet must handle concurrent
@@ -80,14 +88,91 @@ public abstract class HttpServlet extends GenericServlet
     private static final String METHOD_POST = "POST";
     private static final String METHOD_PUT = "PUT";
     private static final String METHOD_TRACE = "TRACE";
-
-    private static final String HEADER_IFMODSINCE = "If-Modified-Since";
-    private static final String HEADER_LASTMOD = "Last-Modified";
+    private static final String METHOD_PATCH = "PATCH";
+
+    private static final HeaderName HEADER_IFMODSINCE =
+        HeaderName.IF_MODIFIED_SINCE;
+    private static final HeaderName HEADER_IFUNMODSINCE =
+        HeaderName.IF_UNMODIFIED_SINCE;
+    private static final HeaderName HEADER_IFMATCH = HeaderName.IF_MATCH;
+    private static final HeaderName HEADER_IFNONEMATCH =
+        HeaderName.IF_NONE_MATCH;
+    private static final HeaderName HEADER_LASTMOD = HeaderName.LAST_MODIFIED;
+    private static final HeaderName HEADER_ETAG = HeaderName.ETAG;
+
+    // results of matching an entity-tag against a precondition header
+    private static final int ABSENT = 0;
+    private static final int MATCH = 1;
+    private static final int NO_MATCH = 2;
     
     private static final String LSTRING_FILE =
         "javax.servlet.http.LocalStrings";
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
+
+    /*
+     * The Allow header only depends on which do<i>XXX</i> methods a
+     * servlet class overrides, so it is computed once per class rather
+     * than by reflection on every OPTIONS request.
+     */
+    private static final ClassValue<String> ALLOW_HEADERS =
+        new ClassValue<String>() {
+            @Override
+            protected String computeValue(Class<?> type) {
+                return computeAllowHeader(type);
+            }
+        };
+
+    /*
+     * The "not implemented" message is resolved and formatted once, with
+     * a marker in place of the method name, so that rejecting an unknown
+     * method does not go through ResourceBundle and MessageFormat.  If a
+     * localized message does not mention the method, the prefix is null
+     * and the message is formatted on each use instead.
+     */
+    private static final String NOT_IMPLEMENTED_PREFIX;
+    private static final String NOT_IMPLEMENTED_SUFFIX;
+
+    static {
+        String msg = MessageFormat.format(
+            lStrings.getString("http.method_not_implemented"), "\u0000");
+        int marker = msg.indexOf('\u0000');
+        if (marker >= 0) {
+            NOT_IMPLEMENTED_PREFIX = msg.substring(0, marker);
+            NOT_IMPLEMENTED_SUFFIX = msg.substring(marker + 1);
+        } else {
+            NOT_IMPLEMENTED_PREFIX = null;
+            NOT_IMPLEMENTED_SUFFIX = null;
+        }
+    }
+
+    /*
+     * Returns the message sent with a 501 (Not Implemented) response to
+     * a request with the given method.
+     */
+    private static String notImplemented(String method) {
+        if (NOT_IMPLEMENTED_PREFIX != null) {
+            return NOT_IMPLEMENTED_PREFIX + method + NOT_IMPLEMENTED_SUFFIX;
+        }
+        String errMsg = lStrings.getString("http.method_not_implemented");
+        Object[] errArgs = new Object[1];
+        errArgs[0] = method;
+        return MessageFormat.format(errMsg, errArgs);
+    }
+
+    /*
+     * Handlers for extension methods, keyed by method name.  The map is
+     * copied on every registration so that service() can read it without
+     * locking.
+     */
+    private volatile Map<String, HttpMethodHandler> methodHandlers =
+        Collections.emptyMap();
+
+    /*
+     * The Allow header including the registered extension methods, or
+     * null if it has to be recomputed.
+     */
+    private volatile String allowHeader;
    
     
     /**
@@ -205,6 +290,44 @@ public abstract class HttpServlet extends GenericServlet
     }
 
 
+    /**
+     *
+     * Returns the entity-tag of the current representation of the
+     * resource targeted by the <code>HttpServletRequest</code>,
+     * or <code>null</code> if it is unknown (the default).
+     *
+     * <p>The returned value must be an entity-tag as defined by
+     * RFC 7232, including the double quotes, for example
+     * <code>"xyzzy"</code> for a strong or <code>W/"xyzzy"</code>
+     * for a weak entity-tag.
+     *
+     * <p>Servlets that can quickly determine the entity-tag of a
+     * resource should override this method. The <code>service</code>
+     * method then sets the <code>ETag</code> header for GET and HEAD
+     * requests, and evaluates the <code>If-Match</code> and
+     * <code>If-None-Match</code> preconditions before calling
+     * <code>doGet</code>, <code>doHead</code>, <code>doPut</code>,
+     * <code>doDelete</code> or <code>doPatch</code>, answering with
+     * 304 (Not Modified) or 412 (Precondition Failed) without calling
+     * the handler at all when a precondition does not hold.
+     *
+     * @param req   the <code>HttpServletRequest</code> 
+     *                  object that is sent to the servlet
+     *
+     * @return  the entity-tag of the current representation of the
+     *                  requested resource, or <code>null</code> if it
+     *                  is not known
+     *
+     * @see #getLastModified
+     *
+     * @since Servlet 4.1
+     */
+
+    protected String getETag(HttpServletRequest req) {
+        return null;
+    }
+
+
     /**
      * 
      *
@@ -224,6 +347,15 @@ public abstract class HttpServlet extends GenericServlet
      * and idempotent (that is, protects itself from being
      * called multiple times for one HTTP HEAD request).
      *
+     * <p>Rather than overriding this method, a servlet can also
+     * override {@link #doHeadMetadata}, which this method calls
+     * first. Only if that method does not handle the request is
+     * <code>doGet</code> called and its output counted and discarded.
+     * If <code>doGet</code> starts asynchronous processing, the body is
+     * written after it returns, so the Content-Length header is set only
+     * when the output stream or writer is closed, and not at all if the
+     * response is completed without closing it.
+     *
      * <p>If the HTTP HEAD request is incorrectly formatted,
      * <code>doHead</code> returns an HTTP "Bad Request"
      * message.
@@ -241,10 +373,59 @@ public abstract class HttpServlet extends GenericServlet
     protected void doHead(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException
     {
+        if (doHeadMetadata(req, resp)) {
+            return;
+        }
+
         NoBodyResponse response = new NoBodyResponse(resp);
         
         doGet(req, response);
-        response.setContentLength();
+        if (req.isAsyncStarted()) {
+            response.setContentLengthOnClose();
+        } else {
+            response.setContentLength();
+        }
+    }
+
+
+    /**
+     *
+     * Called by the <code>doHead</code> method to allow a servlet to
+     * answer an HTTP HEAD request without generating a response body.
+     *
+     * <p>A servlet that can determine the headers of its GET response,
+     * such as Content-Type and Content-Length, without producing the
+     * body should override this method, set those headers on
+     * <code>resp</code> and return <code>true</code>. Returning
+     * <code>false</code> (the default) makes <code>doHead</code> fall
+     * back to calling <code>doGet</code>, discarding the body and
+     * counting its bytes to set the Content-Length header.
+     *
+     * <p>An implementation must not write to the response body, and
+     * must not modify <code>resp</code> if it returns
+     * <code>false</code>.
+     *
+     * @param req   the request object that is passed to the servlet
+     *
+     * @param resp  the response object that the servlet
+     *                  uses to return the headers to the client
+     *
+     * @return  <code>true</code> if the response headers have been
+     *                  set, <code>false</code> if <code>doHead</code>
+     *                  has to call <code>doGet</code>
+     *
+     * @throws IOException   if an input or output error occurs
+     *
+     * @throws ServletException  if the request for the HEAD
+     *                                  could not be handled
+     *
+     * @since Servlet 4.1
+     */
+    protected boolean doHeadMetadata(HttpServletRequest req,
+                                     HttpServletResponse resp)
+        throws ServletException, IOException
+    {
+        return false;
     }
 
 
@@ -419,9 +600,101 @@ public abstract class HttpServlet extends GenericServlet
             resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
         }
     }
+
+
+    /**
+     * Called by the server (via the <code>service</code> method)
+     * to allow a servlet to handle a PATCH request.
+     *
+     * The PATCH operation allows a client to apply a set of
+     * changes, described in the request entity, to an existing
+     * resource. See RFC 5789.
+     *
+     * <p>This method does not need to be either safe or idempotent.
+     * Operations requested through PATCH can have side effects for
+     * which users can be held accountable.
+     *
+     * <p>If the HTTP PATCH request is incorrectly formatted,
+     * <code>doPatch</code> returns an HTTP "Bad Request" message.
+     *
+     * @param req   the {@link HttpServletRequest} object that
+     *                  contains the request the client made of
+     *                  the servlet
+     *
+     * @param resp  the {@link HttpServletResponse} object that
+     *                  contains the response the servlet returns
+     *                  to the client
+     *
+     * @throws IOException   if an input or output error occurs
+     *                              while the servlet is handling the
+     *                              PATCH request
+     *
+     * @throws ServletException  if the request for the
+     *                                  PATCH cannot be handled
+     *
+     * @since Servlet 4.1
+     */
+    protected void doPatch(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException
+    {
+        String protocol = req.getProtocol();
+        String msg = lStrings.getString("http.method_patch_not_supported");
+        if (protocol.endsWith("1.1")) {
+            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
+        } else {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
+        }
+    }
+
+
+    /**
+     * Registers a handler for an HTTP extension method, that is, a
+     * method for which this class has no <code>do</code><i>XXX</i>
+     * method. Requests using that method are passed to the handler
+     * by <code>service</code>, and the method is included in the
+     * <code>Allow</code> header returned by <code>doOptions</code>.
+     *
+     * <p>Handlers are typically registered from <code>init</code>.
+     * Registering a handler for a method that already has one
+     * replaces the previous handler.
+     *
+     * @param method    the name of the extension method, for example
+     *                  <code>PROPFIND</code>; method names are
+     *                  case-sensitive
+     *
+     * @param handler   the handler for requests using <code>method</code>
+     *
+     * @throws IllegalArgumentException if <code>method</code> is not a
+     *                  valid HTTP token, is one of the methods this
+     *                  class provides a <code>do</code><i>XXX</i> method
+     *                  for, or if <code>handler</code> is null
+     *
+     * @since Servlet 4.1
+     */
+    protected void addMethodHandler(String method, HttpMethodHandler handler) {
+        if (method == null || !HttpTokens.isToken(method)
+                || HttpMethod.forName(method) != null) {
+            String errMsg = lStrings.getString("err.method_handler_invalid");
+            Object[] errArgs = new Object[1];
+            errArgs[0] = method;
+            errMsg = MessageFormat.format(errMsg, errArgs);
+            throw new IllegalArgumentException(errMsg);
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+
+        synchronized (this) {
+            Map<String, HttpMethodHandler> handlers =
+                new LinkedHashMap<String, HttpMethodHandler>(methodHandlers);
+            handlers.put(method, handler);
+            methodHandlers = Collections.unmodifiableMap(handlers);
+            allowHeader = null;
+        }
+    }
     
 
-    private Method[] getAllDeclaredMethods(Class<? extends HttpServlet> c) {
+    private static Method[] getAllDeclaredMethods(Class<?> c) {
 
         Class<?> clazz = c;
         Method[] allMethods = null;
@@ -447,47 +720,22 @@ public abstract class HttpServlet extends GenericServlet
     }
 
 
-    /**
-     * Called by the server (via the <code>service</code> method)
-     * to allow a servlet to handle a OPTIONS request.
-     *
-     * The OPTIONS request determines which HTTP methods 
-     * the server supports and
-     * returns an appropriate header. For example, if a servlet
-     * overrides <code>doGet</code>, this method returns the
-     * following header:
-     *
-     * <p><code>Allow: GET, HEAD, TRACE, OPTIONS</code>
-     *
-     * <p>There's no need to override this method unless the
-     * servlet implements new HTTP methods, beyond those 
-     * implemented by HTTP 1.1.
-     *
-     * @param req   the {@link HttpServletRequest} object that
-     *                  contains the request the client made of
-     *                  the servlet
-     *
-     * @param resp  the {@link HttpServletResponse} object that
-     *                  contains the response the servlet returns
-     *                  to the client                                
-     *
-     * @throws IOException   if an input or output error occurs
-     *                              while the servlet is handling the
-     *                              OPTIONS request
-     *
-     * @throws ServletException  if the request for the
-     *                                  OPTIONS cannot be handled
+    /*
+     * Builds the value of the Allow header for the given HttpServlet
+     * subclass from the do<i>XXX</i> methods it declares.  TRACE and
+     * OPTIONS are always allowed, since HttpServlet implements them;
+     * HEAD is allowed whenever doGet, doHead or doHeadMetadata is
+     * overridden.
      */
-    protected void doOptions(HttpServletRequest req, HttpServletResponse resp)
-        throws ServletException, IOException
-    {
-        Method[] methods = getAllDeclaredMethods(this.getClass());
+    private static String computeAllowHeader(Class<?> c) {
+        Method[] methods = getAllDeclaredMethods(c);
         
         boolean ALLOW_GET = false;
         boolean ALLOW_HEAD = false;
         boolean ALLOW_POST = false;
         boolean ALLOW_PUT = false;
         boolean ALLOW_DELETE = false;
+        boolean ALLOW_PATCH = false;
         boolean ALLOW_TRACE = true;
         boolean ALLOW_OPTIONS = true;
         
@@ -497,12 +745,17 @@ public abstract class HttpServlet extends GenericServlet
             if (methodName.equals("doGet")) {
                 ALLOW_GET = true;
                 ALLOW_HEAD = true;
+            } else if (methodName.equals("doHead")
+                    || methodName.equals("doHeadMetadata")) {
+                ALLOW_HEAD = true;
             } else if (methodName.equals("doPost")) {
                 ALLOW_POST = true;
             } else if (methodName.equals("doPut")) {
                 ALLOW_PUT = true;
             } else if (methodName.equals("doDelete")) {
                 ALLOW_DELETE = true;
+            } else if (methodName.equals("doPatch")) {
+                ALLOW_PATCH = true;
             }
             
         }
@@ -537,6 +790,12 @@ public abstract class HttpServlet extends GenericServlet
             }
             allow.append(METHOD_DELETE);
         }
+        if (ALLOW_PATCH) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_PATCH);
+        }
         if (ALLOW_TRACE) {
             if (allow.length() > 0) {
                 allow.append(", ");
@@ -550,7 +809,77 @@ public abstract class HttpServlet extends GenericServlet
             allow.append(METHOD_OPTIONS);
         }
         
-        resp.setHeader("Allow", allow.toString());
+        return allow.toString();
+    }
+
+
+    /**
+     * Called by the server (via the <code>service</code> method)
+     * to allow a servlet to handle a OPTIONS request.
+     *
+     * The OPTIONS request determines which HTTP methods 
+     * the server supports and
+     * returns an appropriate header. For example, if a servlet
+     * overrides <code>doGet</code>, this method returns the
+     * following header:
+     *
+     * <p><code>Allow: GET, HEAD, TRACE, OPTIONS</code>
+     *
+     * <p>There's no need to override this method unless the
+     * servlet implements new HTTP methods, beyond those 
+     * implemented by HTTP 1.1.
+     *
+     * <p>The value of the <code>Allow</code> header is determined once
+     * per servlet class and reused for subsequent OPTIONS requests.
+     * Extension methods registered with {@link #addMethodHandler}
+     * are appended to it.
+     *
+     * @param req   the {@link HttpServletRequest} object that
+     *                  contains the request the client made of
+     *                  the servlet
+     *
+     * @param resp  the {@link HttpServletResponse} object that
+     *                  contains the response the servlet returns
+     *                  to the client                                
+     *
+     * @throws IOException   if an input or output error occurs
+     *                              while the servlet is handling the
+     *                              OPTIONS request
+     *
+     * @throws ServletException  if the request for the
+     *                                  OPTIONS cannot be handled
+     */
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException
+    {
+        resp.setHeader(HeaderName.ALLOW, getAllowHeader());
+    }
+
+
+    /*
+     * Returns the Allow header for this servlet: the cached value for
+     * its class followed by any registered extension methods.  The value
+     * is only cached if no handler has been registered meanwhile, under
+     * the lock of addMethodHandler, so that a stale value never
+     * overwrites the reset done by a registration.
+     */
+    private String getAllowHeader() {
+        String allow = allowHeader;
+        if (allow == null) {
+            Map<String, HttpMethodHandler> handlers = methodHandlers;
+            StringBuilder sb = new StringBuilder(
+                ALLOW_HEADERS.get(this.getClass()));
+            for (String method : handlers.keySet()) {
+                sb.append(", ").append(method);
+            }
+            allow = sb.toString();
+            synchronized (this) {
+                if (methodHandlers == handlers) {
+                    allowHeader = allow;
+                }
+            }
+        }
+        return allow;
     }
     
     
@@ -611,7 +940,10 @@ public abstract class HttpServlet extends GenericServlet
      * Receives standard HTTP requests from the public
      * <code>service</code> method and dispatches
      * them to the <code>do</code><i>XXX</i> methods defined in 
-     * this class. This method is an HTTP-specific version of the 
+     * this class, or to the {@link HttpMethodHandler} registered for
+     * an extension method. Requests for any other method are rejected
+     * with a 501 (Not Implemented) error. This method is an
+     * HTTP-specific version of the 
      * {@link javax.servlet.Servlet#service} method. There's no
      * need to override this method.
      *
@@ -636,62 +968,200 @@ public abstract class HttpServlet extends GenericServlet
         throws ServletException, IOException
     {
         String method = req.getMethod();
+        HttpMethod httpMethod = HttpMethod.forName(method);
 
-        if (method.equals(METHOD_GET)) {
-            long lastModified = getLastModified(req);
-            if (lastModified == -1) {
-                // servlet doesn't support if-modified-since, no reason
-                // to go through further expensive logic
-                doGet(req, resp);
+        if (httpMethod == null) {
+            HttpMethodHandler handler = methodHandlers.get(method);
+            if (handler != null) {
+                handler.handle(req, resp);
             } else {
-                long ifModifiedSince = req.getDateHeader(HEADER_IFMODSINCE);
-                if (ifModifiedSince < lastModified) {
-                    // If the servlet mod time is later, call doGet()
-                    // Round down to the nearest second for a proper compare
-                    // A ifModifiedSince of -1 will always be less
-                    maybeSetLastModified(resp, lastModified);
-                    doGet(req, resp);
-                } else {
-                    resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                }
+                //
+                // Note that this means NO servlet supports whatever
+                // method was requested, anywhere on this server.
+                //
+                resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED,
+                               notImplemented(method));
             }
+            return;
+        }
 
-        } else if (method.equals(METHOD_HEAD)) {
+        switch (httpMethod) {
+        case GET:
             long lastModified = getLastModified(req);
-            maybeSetLastModified(resp, lastModified);
-            doHead(req, resp);
+            String etag = getETag(req);
+            if (lastModified == -1 && etag == null) {
+                // servlet doesn't support conditional requests, no reason
+                // to go through further expensive logic
+                doGet(req, resp);
+            } else if (checkPreconditions(req, resp, true, etag, lastModified)) {
+                maybeSetLastModified(resp, lastModified);
+                maybeSetETag(resp, etag);
+                doGet(req, resp);
+            }
+            break;
+
+        case HEAD:
+            lastModified = getLastModified(req);
+            etag = getETag(req);
+            if (checkPreconditions(req, resp, true, etag, lastModified)) {
+                maybeSetLastModified(resp, lastModified);
+                maybeSetETag(resp, etag);
+                doHead(req, resp);
+            }
+            break;
 
-        } else if (method.equals(METHOD_POST)) {
+        case POST:
             doPost(req, resp);
-            
-        } else if (method.equals(METHOD_PUT)) {
-            doPut(req, resp);
-            
-        } else if (method.equals(METHOD_DELETE)) {
-            doDelete(req, resp);
-            
-        } else if (method.equals(METHOD_OPTIONS)) {
-            doOptions(req,resp);
-            
-        } else if (method.equals(METHOD_TRACE)) {
-            doTrace(req,resp);
-            
-        } else {
-            //
-            // Note that this means NO servlet supports whatever
-            // method was requested, anywhere on this server.
-            //
+            break;
 
-            String errMsg = lStrings.getString("http.method_not_implemented");
-            Object[] errArgs = new Object[1];
-            errArgs[0] = method;
-            errMsg = MessageFormat.format(errMsg, errArgs);
-            
-            resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, errMsg);
+        case PUT:
+            if (checkPreconditions(req, resp)) {
+                doPut(req, resp);
+            }
+            break;
+
+        case DELETE:
+            if (checkPreconditions(req, resp)) {
+                doDelete(req, resp);
+            }
+            break;
+
+        case OPTIONS:
+            doOptions(req, resp);
+            break;
+
+        case TRACE:
+            doTrace(req, resp);
+            break;
+
+        case PATCH:
+            if (checkPreconditions(req, resp)) {
+                doPatch(req, resp);
+            }
+            break;
         }
     }
     
 
+    /*
+     * Evaluates the preconditions of a PUT, DELETE or PATCH request.
+     * getETag and getLastModified are only consulted if the request
+     * actually carries a precondition.
+     */
+    private boolean checkPreconditions(HttpServletRequest req,
+                                       HttpServletResponse resp)
+        throws IOException
+    {
+        if (req.getHeader(HEADER_IFMATCH) == null
+                && req.getHeader(HEADER_IFNONEMATCH) == null
+                && req.getHeader(HEADER_IFUNMODSINCE) == null) {
+            return true;
+        }
+        return checkPreconditions(req, resp, false, getETag(req),
+                                  getLastModified(req));
+    }
+
+
+    /*
+     * Evaluates the preconditions of the request in the order given by
+     * RFC 7232, section 6.  Returns true if the request is to be passed
+     * to its handler; otherwise the response status has been set to 304
+     * (Not Modified) or 412 (Precondition Failed).
+     *
+     * Entity-tag preconditions are only evaluated if the servlet
+     * provides an entity-tag, and date preconditions only if it
+     * provides a modification time, so that servlets which evaluate
+     * these headers themselves keep working unchanged.
+     */
+    private boolean checkPreconditions(HttpServletRequest req,
+                                       HttpServletResponse resp,
+                                       boolean safe, String etag,
+                                       long lastModified)
+        throws IOException
+    {
+        int ifMatch = matchHeader(req, HEADER_IFMATCH, etag, false);
+        if (ifMatch == NO_MATCH) {
+            resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+            return false;
+        }
+        if (ifMatch == ABSENT && lastModified != -1) {
+            long ifUnmodifiedSince = getDateHeader(req, HEADER_IFUNMODSINCE);
+            // HTTP dates have a resolution of one second
+            if (ifUnmodifiedSince != -1
+                    && lastModified / 1000 > ifUnmodifiedSince / 1000) {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return false;
+            }
+        }
+
+        int ifNoneMatch = matchHeader(req, HEADER_IFNONEMATCH, etag, true);
+        if (ifNoneMatch == MATCH) {
+            if (safe) {
+                maybeSetETag(resp, etag);
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            } else {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+            }
+            return false;
+        }
+        if (ifNoneMatch == ABSENT && safe && lastModified != -1) {
+            long ifModifiedSince = getDateHeader(req, HEADER_IFMODSINCE);
+            // HTTP dates have a resolution of one second, as above
+            if (ifModifiedSince != -1
+                    && lastModified / 1000 <= ifModifiedSince / 1000) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /*
+     * Matches the given entity-tag against all values of an If-Match or
+     * If-None-Match header.  Returns ABSENT if the request does not have
+     * the header or the entity-tag is unknown.
+     */
+    private static int matchHeader(HttpServletRequest req, HeaderName name,
+                                   String etag, boolean weak) {
+        if (etag == null || req.getHeader(name) == null) {
+            return ABSENT;
+        }
+        Enumeration<String> values = req.getHeaders(name);
+        while (values.hasMoreElements()) {
+            if (EntityTags.matches(values.nextElement(), etag, weak)) {
+                return MATCH;
+            }
+        }
+        return NO_MATCH;
+    }
+
+
+    /*
+     * Returns the value of a date header, or -1 if the header is absent
+     * or cannot be parsed, in which case RFC 7232 requires it to be
+     * ignored.  The header is read by name with getHeader, so that
+     * wrappers overriding it are honored, and parsed with HttpDates,
+     * which neither allocates nor throws for a malformed date.
+     */
+    private static long getDateHeader(HttpServletRequest req,
+                                      HeaderName name) {
+        String value = req.getHeader(name.getName());
+        return (value == null) ? -1 : HttpDates.parse(value);
+    }
+
+
+    /*
+     * Sets the ETag header field, if it has not already been set and
+     * the servlet provides an entity-tag.
+     */
+    private void maybeSetETag(HttpServletResponse resp, String etag) {
+        if (etag == null || resp.containsHeader(HEADER_ETAG))
+            return;
+        resp.setHeader(HEADER_ETAG, etag);
+    }
+
+
     /*
      * Sets the Last-Modified entity header field, if it has not
      * already been set and if the value is meaningful.  Called before
@@ -704,7 +1174,8 @@ public abstract class HttpServlet extends GenericServlet
         if (resp.containsHeader(HEADER_LASTMOD))
             return;
         if (lastModified >= 0)
-            resp.setDateHeader(HEADER_LASTMOD, lastModified);
+            resp.setHeader(HEADER_LASTMOD.getName(),
+                           HttpDates.format(lastModified));
     }
    
     
@@ -767,12 +1238,13 @@ class NoBodyResponse extends HttpServletResponseWrapper {
     private NoBodyOutputStream noBody;
     private PrintWriter writer;
     private boolean didSetContentLength;
+    private boolean setContentLengthOnClose;
     private boolean usingOutputStream;
 
     // file private
     NoBodyResponse(HttpServletResponse r) {
         super(r);
-        noBody = new NoBodyOutputStream();
+        noBody = new NoBodyOutputStream(this, r);
     }
 
     // file private
@@ -785,6 +1257,28 @@ class NoBodyResponse extends HttpServletResponseWrapper {
         }
     }
 
+    /*
+     * Defers setting the content length until the body has been written,
+     * which asynchronous processing signals by closing the output stream
+     * or the writer.
+     */
+    // file private
+    synchronized void setContentLengthOnClose() {
+        if (noBody.isClosed()) {
+            setContentLength();
+        } else {
+            setContentLengthOnClose = true;
+        }
+    }
+
+    // file private
+    synchronized void closed() {
+        // a writer has flushed its output to the stream before closing it
+        if (setContentLengthOnClose && !didSetContentLength) {
+            setContentLength(noBody.getContentLength());
+        }
+    }
+
     @Override
     public void setContentLength(int len) {
         super.setContentLength(len);
@@ -859,7 +1353,10 @@ class NoBodyResponse extends HttpServletResponseWrapper {
 
 
 /*
- * Servlet output stream that gobbles up all its data.
+ * Servlet output stream that gobbles up all its data.  Since writes never
+ * block, it is always ready; a WriteListener is registered with the output
+ * stream of the wrapped response, so that the container drives it as it
+ * would for a GET request.
  */
 // file private
 class NoBodyOutputStream extends ServletOutputStream {
@@ -869,16 +1366,35 @@ class NoBodyOutputStream extends ServletOutputStream {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    private final NoBodyResponse owner;
+    private final HttpServletResponse response;
     private int contentLength = 0;
+    private volatile boolean closed;
 
     // file private
-    NoBodyOutputStream() {}
+    NoBodyOutputStream(NoBodyResponse owner, HttpServletResponse response) {
+        this.owner = owner;
+        this.response = response;
+    }
 
     // file private
     int getContentLength() {
         return contentLength;
     }
 
+    // file private
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            owner.closed();
+        }
+    }
+
     @Override
     public void write(int b) {
         contentLength++;
@@ -907,11 +1423,20 @@ class NoBodyOutputStream extends ServletOutputStream {
     }
 
 
+    @Override
     public boolean isReady() {
-        return false;
+        return true;
     }
 
+    @Override
     public void setWriteListener(WriteListener writeListener) {
-
+        if (writeListener == null) {
+            throw new NullPointerException("WriteListener cannot be null");
+        }
+        try {
+            response.getOutputStream().setWriteListener(writeListener);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
@@ -19,6 +19,7 @@ package javax.servlet.http;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.BiConsumer;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -88,6 +89,44 @@ public interface HttpServletRequest extends ServletRequest {
      */
     public Cookie[] getCookies();
 
+    /**
+     * Returns the cookie with the given name that the client sent with
+     * this request, without creating <code>Cookie</code> objects for the
+     * other cookies.
+     *
+     * @implSpec
+     * The default implementation parses the <code>Cookie</code> headers
+     * of this request with a {@link CookieParser}, and returns the first
+     * cookie with the given name.
+     *
+     * @param name  the name of the cookie
+     *
+     * @return      the cookie, or <code>null</code> if the request has no
+     *              cookie with the given name
+     *
+     * @since Servlet 4.1
+     */
+    default public Cookie getCookie(String name) {
+        if (name == null) {
+            throw new NullPointerException("Cookie name cannot be null");
+        }
+        Enumeration<String> headers = getHeaders("Cookie");
+        if (headers == null) {
+            return null;
+        }
+        CookieParser parser = null;
+        while (headers.hasMoreElements()) {
+            if (parser == null) {
+                parser = new CookieParser();
+            }
+            Cookie cookie = parser.parse(headers.nextElement()).getCookie(name);
+            if (cookie != null) {
+                return cookie;
+            }
+        }
+        return null;
+    }
+
     /**
      * Returns the value of the specified request header
      * as a <code>long</code> value that represents a
@@ -188,6 +227,82 @@ public interface HttpServletRequest extends ServletRequest {
      */
     public Enumeration<String> getHeaderNames();
 
+    /**
+     * Returns the value of the specified request header, as
+     * {@link #getHeader(String)} does.
+     *
+     * @implSpec
+     * The default implementation returns
+     * <code>getHeader(name.getName())</code>.
+     *
+     * @param name		the name of the header
+     *
+     * @return			the value of the requested header, or
+     *				<code>null</code> if the request does not
+     *				have a header of that name
+     *
+     * @since Servlet 4.1
+     */
+    default public String getHeader(HeaderName name) {
+        return getHeader(name.getName());
+    }
+
+    /**
+     * Returns all the values of the specified request header, as
+     * {@link #getHeaders(String)} does.
+     *
+     * @implSpec
+     * The default implementation returns
+     * <code>getHeaders(name.getName())</code>.
+     *
+     * @param name		the name of the header
+     *
+     * @return			an <code>Enumeration</code> containing
+     *				the values of the requested header, which
+     *				is empty if the request does not have any
+     *				headers of that name, or <code>null</code>
+     *				if the container does not allow access to
+     *				header information
+     *
+     * @since Servlet 4.1
+     */
+    default public Enumeration<String> getHeaders(HeaderName name) {
+        return getHeaders(name.getName());
+    }
+
+    /**
+     * Performs the given action for each value of each header of this
+     * request, in the order the container keeps them, passing the name
+     * and the value of the header.
+     *
+     * <p>Containers are encouraged to override this method so that it
+     * does not allocate, as the default implementation does. Nothing is
+     * done if the container does not allow access to header information.
+     *
+     * @implSpec
+     * The default implementation enumerates {@link #getHeaderNames} and,
+     * for each name, {@link #getHeaders(String)}.
+     *
+     * @param action	the action to perform for each header value
+     *
+     * @since Servlet 4.1
+     */
+    default public void forEachHeader(BiConsumer<String, String> action) {
+        Enumeration<String> names = getHeaderNames();
+        if (names == null) {
+            return;
+        }
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            Enumeration<String> values = getHeaders(name);
+            if (values != null) {
+                while (values.hasMoreElements()) {
+                    action.accept(name, values.nextElement());
+                }
+            }
+        }
+    }
+
     /**
      * Returns the value of the specified request header
      * as an <code>int</code>. If the request does not have a header
@@ -518,6 +633,49 @@ public interface HttpServletRequest extends ServletRequest {
      */
     public StringBuffer getRequestURL();
 
+    /**
+     * Reconstructs the URL the client used to make the request, as
+     * {@link #getRequestURL} does, and appends it to the given
+     * <code>StringBuilder</code>.
+     *
+     * <p>Unlike {@link #getRequestURL}, this method lets the caller reuse
+     * a builder, and does not need a synchronized <code>StringBuffer</code>.
+     *
+     * @implSpec
+     * The default implementation appends the scheme, the server name,
+     * the server port unless it is the default port of the scheme (80 for
+     * <code>http</code>, 443 for <code>https</code>), and the
+     * {@link #getRequestURI request URI}. The
+     * <code>scheme://host[:port]</code> prefix is built once per scheme,
+     * server name and port and then reused for later requests.
+     *
+     * @param sb    the builder to append the URL to
+     *
+     * @return      <code>sb</code>
+     *
+     * @since Servlet 4.1
+     */
+    default public StringBuilder appendRequestURL(StringBuilder sb) {
+        return sb.append(RequestURLPrefixes.get(this))
+                 .append(getRequestURI());
+    }
+
+    /**
+     * Reconstructs the URL the client used to make the request, as
+     * {@link #getRequestURL} does, and returns it as a <code>String</code>.
+     *
+     * @implSpec
+     * The default implementation returns the URL built as by
+     * {@link #appendRequestURL}.
+     *
+     * @return      the reconstructed URL
+     *
+     * @since Servlet 4.1
+     */
+    default public String getRequestURLString() {
+        return RequestURLPrefixes.get(this).concat(getRequestURI());
+    }
+
     /**
      * Returns the part of this request's URL that calls
      * the servlet. This path starts with a "/" character
@@ -19,6 +19,7 @@ package javax.servlet.http;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.BiConsumer;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequestWrapper;
 
@@ -37,6 +38,37 @@ import javax.servlet.ServletRequestWrapper;
 
 public class HttpServletRequestWrapper extends ServletRequestWrapper implements HttpServletRequest {
 
+    /*
+     * As in ServletRequestWrapper, calls of these methods skip the
+     * wrappers whose classes do not override them.
+     */
+    private static final int GET_HEADER = 0;
+    private static final int GET_HEADERS = 1;
+
+    /*
+     * Set for the classes overriding neither getHeaderNames nor
+     * getHeaders(String), whose forEachHeader can be delegated.
+     */
+    private static final int FOR_EACH_HEADER = 2;
+
+    private static final ClassValue<Integer> PASS_THROUGH =
+        new ClassValue<Integer>() {
+            @Override
+            protected Integer computeValue(Class<?> type) {
+                int mask = 0;
+                if (!overrides(type, "getHeader", String.class)) {
+                    mask |= 1 << GET_HEADER;
+                }
+                if (!overrides(type, "getHeaders", String.class)) {
+                    mask |= 1 << GET_HEADERS;
+                    if (!overrides(type, "getHeaderNames")) {
+                        mask |= 1 << FOR_EACH_HEADER;
+                    }
+                }
+                return mask;
+            }
+        };
+
     /** 
      * Constructs a request object wrapping the given request.
      * @throws java.lang.IllegalArgumentException if the request is null
@@ -69,6 +101,17 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
         return this._getHttpServletRequest().getCookies();
     }
 
+    /**
+     * The default behavior of this method is to call getCookie(String name)
+     * on the wrapped request object.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public Cookie getCookie(String name) {
+        return this._getHttpServletRequest().getCookie(name);
+    }
+
     /**
      * The default behavior of this method is to return getDateHeader(String name)
      * on the wrapped request object.
@@ -84,7 +127,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public String getHeader(String name) {
-        return this._getHttpServletRequest().getHeader(name);
+        return getTarget(GET_HEADER).getHeader(name);
     }
     
     /**
@@ -93,7 +136,7 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
      */
     @Override
     public Enumeration<String> getHeaders(String name) {
-        return this._getHttpServletRequest().getHeaders(name);
+        return getTarget(GET_HEADERS).getHeaders(name);
     }  
 
     /**
@@ -104,6 +147,50 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     public Enumeration<String> getHeaderNames() {
         return this._getHttpServletRequest().getHeaderNames();
     }
+
+    /**
+     * The default behavior of this method is to return
+     * getHeader(name.getName()) on this wrapper, so that subclasses
+     * overriding {@link #getHeader(String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public String getHeader(HeaderName name) {
+        return getHeader(name.getName());
+    }
+
+    /**
+     * The default behavior of this method is to return
+     * getHeaders(name.getName()) on this wrapper, so that subclasses
+     * overriding {@link #getHeaders(String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public Enumeration<String> getHeaders(HeaderName name) {
+        return getHeaders(name.getName());
+    }
+
+    /**
+     * The default behavior of this method is to call
+     * forEachHeader(BiConsumer action) on the wrapped request object,
+     * unless the class of this wrapper overrides {@link #getHeaderNames}
+     * or {@link #getHeaders(String)}, in which case the headers are
+     * enumerated with these methods.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public void forEachHeader(BiConsumer<String, String> action) {
+        if ((PASS_THROUGH.get(getClass()) & (1 << FOR_EACH_HEADER)) != 0) {
+            this._getHttpServletRequest().forEachHeader(action);
+        } else {
+            HttpServletRequest.super.forEachHeader(action);
+        }
+    }
     
     /**
      * The default behavior of this method is to return
@@ -221,6 +308,28 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     public StringBuffer getRequestURL() {
         return this._getHttpServletRequest().getRequestURL();
     }
+
+    /**
+     * The default behavior of this method is to call
+     * appendRequestURL(StringBuilder sb) on the wrapped request object.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public StringBuilder appendRequestURL(StringBuilder sb) {
+        return this._getHttpServletRequest().appendRequestURL(sb);
+    }
+
+    /**
+     * The default behavior of this method is to return
+     * getRequestURLString() on the wrapped request object.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public String getRequestURLString() {
+        return this._getHttpServletRequest().getRequestURLString();
+    }
         
     /**
      * The default behavior of this method is to return getServletPath()
@@ -405,4 +514,39 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     public boolean isTrailerFieldsReady() {
         return this._getHttpServletRequest().isTrailerFieldsReady();
     }
+
+    /*
+     * Returns the request that calls of the given pass-through method are
+     * to be made on: the innermost request, starting with the wrapped
+     * request, that is not a wrapper passing the method through.
+     */
+    private HttpServletRequest getTarget(int method) {
+        HttpServletRequest r = _getHttpServletRequest();
+        while (r instanceof HttpServletRequestWrapper
+                && (PASS_THROUGH.get(r.getClass()) & (1 << method)) != 0) {
+            r = ((HttpServletRequestWrapper) r)._getHttpServletRequest();
+        }
+        return r;
+    }
+
+    /*
+     * Tests whether the given class, or any of its superclasses below
+     * HttpServletRequestWrapper, declares the given method.
+     */
+    private static boolean overrides(Class<?> type, String name,
+                                     Class<?>... parameterTypes) {
+        for (Class<?> c = type;
+                c != null && c != HttpServletRequestWrapper.class;
+                c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look further up
+            } catch (SecurityException e) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -20,6 +20,7 @@ package javax.servlet.http;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import javax.servlet.ServletResponse;
 
@@ -415,6 +416,123 @@ public interface HttpServletResponse extends ServletResponse {
      */
     public Collection<String> getHeaderNames();
 
+    /**
+     * Returns a boolean indicating whether the named response header
+     * has already been set, as {@link #containsHeader(String)} does.
+     *
+     * @implSpec
+     * The default implementation returns
+     * <code>containsHeader(name.getName())</code>.
+     *
+     * @param name the header name
+     *
+     * @return <code>true</code> if the named response header has already
+     * been set; <code>false</code> otherwise
+     *
+     * @since Servlet 4.1
+     */
+    default public boolean containsHeader(HeaderName name) {
+        return containsHeader(name.getName());
+    }
+
+    /**
+     * Sets a response header with the given name and value, as
+     * {@link #setHeader(String, String)} does.
+     *
+     * @implSpec
+     * The default implementation calls
+     * <code>setHeader(name.getName(), value)</code>.
+     *
+     * @param name the name of the header
+     * @param value the header value, which may be <code>null</code> to
+     * clear the header
+     *
+     * @since Servlet 4.1
+     */
+    default public void setHeader(HeaderName name, String value) {
+        setHeader(name.getName(), value);
+    }
+
+    /**
+     * Adds a response header with the given name and value, as
+     * {@link #addHeader(String, String)} does.
+     *
+     * @implSpec
+     * The default implementation calls
+     * <code>addHeader(name.getName(), value)</code>.
+     *
+     * @param name the name of the header
+     * @param value the additional header value
+     *
+     * @since Servlet 4.1
+     */
+    default public void addHeader(HeaderName name, String value) {
+        addHeader(name.getName(), value);
+    }
+
+    /**
+     * Gets the value of the response header with the given name, as
+     * {@link #getHeader(String)} does.
+     *
+     * @implSpec
+     * The default implementation returns
+     * <code>getHeader(name.getName())</code>.
+     *
+     * @param name the name of the response header whose value to return
+     *
+     * @return the value of the response header with the given name,
+     * or <tt>null</tt> if no header with the given name has been set
+     * on this response
+     *
+     * @since Servlet 4.1
+     */
+    default public String getHeader(HeaderName name) {
+        return getHeader(name.getName());
+    }
+
+    /**
+     * Gets the values of the response header with the given name, as
+     * {@link #getHeaders(String)} does.
+     *
+     * @implSpec
+     * The default implementation returns
+     * <code>getHeaders(name.getName())</code>.
+     *
+     * @param name the name of the response header whose values to return
+     *
+     * @return a (possibly empty) <code>Collection</code> of the values
+     * of the response header with the given name
+     *
+     * @since Servlet 4.1
+     */
+    default public Collection<String> getHeaders(HeaderName name) {
+        return getHeaders(name.getName());
+    }
+
+    /**
+     * Performs the given action for each value of each header of this
+     * response, passing the name and the value of the header.
+     *
+     * <p>This method considers the same headers as
+     * {@link #getHeaderNames}. Containers are encouraged to override it
+     * so that it does not allocate, as the default implementation does.
+     *
+     * @implSpec
+     * The default implementation iterates over {@link #getHeaderNames}
+     * and, for each name, {@link #getHeaders(String)}.
+     *
+     * @param action the action to perform for each header value
+     *
+     * @since Servlet 4.1
+     */
+    default public void forEachHeader(BiConsumer<String, String> action) {
+        for (String name : getHeaderNames()) {
+            for (String value : getHeaders(name)) {
+                action.accept(name, value);
+            }
+        }
+    }
+
     /**
      * Sets the supplier of trailer headers.
      *
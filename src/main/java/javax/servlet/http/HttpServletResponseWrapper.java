@@ -20,6 +20,7 @@ package javax.servlet.http;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import javax.servlet.ServletResponseWrapper;
 
@@ -38,6 +39,19 @@ import javax.servlet.ServletResponseWrapper;
 
 public class HttpServletResponseWrapper extends ServletResponseWrapper implements HttpServletResponse {
 
+    /*
+     * For each wrapper class, whether it overrides neither getHeaderNames
+     * nor getHeaders(String), so that its forEachHeader can be delegated.
+     */
+    private static final ClassValue<Boolean> FOR_EACH_HEADER =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                return !overrides(type, "getHeaderNames")
+                    && !overrides(type, "getHeaders", String.class);
+            }
+        };
+
     /** 
      * Constructs a response adaptor wrapping the given response.
      * @throws java.lang.IllegalArgumentException if the response is null
@@ -287,6 +301,89 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
         return _getHttpServletResponse().getHeaderNames();
     }
 
+    /**
+     * The default behaviour of this method is to call
+     * containsHeader(name.getName()) on this wrapper, so that subclasses
+     * overriding {@link #containsHeader(String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public boolean containsHeader(HeaderName name) {
+        return containsHeader(name.getName());
+    }
+
+    /**
+     * The default behaviour of this method is to call
+     * setHeader(name.getName(), value) on this wrapper, so that subclasses
+     * overriding {@link #setHeader(String, String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public void setHeader(HeaderName name, String value) {
+        setHeader(name.getName(), value);
+    }
+
+    /**
+     * The default behaviour of this method is to call
+     * addHeader(name.getName(), value) on this wrapper, so that subclasses
+     * overriding {@link #addHeader(String, String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public void addHeader(HeaderName name, String value) {
+        addHeader(name.getName(), value);
+    }
+
+    /**
+     * The default behaviour of this method is to call
+     * getHeader(name.getName()) on this wrapper, so that subclasses
+     * overriding {@link #getHeader(String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public String getHeader(HeaderName name) {
+        return getHeader(name.getName());
+    }
+
+    /**
+     * The default behaviour of this method is to call
+     * getHeaders(name.getName()) on this wrapper, so that subclasses
+     * overriding {@link #getHeaders(String)} need not override this
+     * method too.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public Collection<String> getHeaders(HeaderName name) {
+        return getHeaders(name.getName());
+    }
+
+    /**
+     * The default behaviour of this method is to call
+     * {@link HttpServletResponse#forEachHeader} on the wrapped response
+     * object, unless the class of this wrapper overrides
+     * {@link #getHeaderNames} or {@link #getHeaders(String)}, in which
+     * case the headers are enumerated with these methods.
+     *
+     * @since Servlet 4.1
+     */
+    @Override
+    public void forEachHeader(BiConsumer<String, String> action) {
+        if (FOR_EACH_HEADER.get(getClass())) {
+            _getHttpServletResponse().forEachHeader(action);
+        } else {
+            HttpServletResponse.super.forEachHeader(action);
+        }
+    }
+
     /**
      * The default behaviour of this method is to call
      * {@link HttpServletResponse#setTrailerFields} on the wrapped response
@@ -314,4 +411,25 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     public Supplier<Map<String, String>> getTrailerFields() {
         return _getHttpServletResponse().getTrailerFields();
     }
+
+    /*
+     * Tests whether the given class, or any of its superclasses below
+     * HttpServletResponseWrapper, declares the given method.
+     */
+    private static boolean overrides(Class<?> type, String name,
+                                     Class<?>... parameterTypes) {
+        for (Class<?> c = type;
+                c != null && c != HttpServletResponseWrapper.class;
+                c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look further up
+            } catch (SecurityException e) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,187 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+/**
+ * Character classes of HTTP, as defined by RFC 7230 and RFC 6265, for
+ * validating tokens such as method names, header field names and cookie
+ * names, and the values and attributes of cookies.
+ *
+ * <p>The classes are held as bit masks of the ASCII characters, so that
+ * testing a character is a shift and a mask, and validating a token
+ * allocates nothing.
+ *
+ * @since Servlet 4.1
+ */
+public final class HttpTokens {
+
+    /*
+     * The token characters (tchar) of RFC 7230 as bit masks, characters
+     * 0-63 in the low and 64-127 in the high mask.
+     */
+    private static final long TCHAR_LOW;
+    private static final long TCHAR_HIGH;
+
+    /*
+     * The cookie-octets of RFC 6265: printable ASCII except space,
+     * double quote, comma, semicolon and backslash.
+     */
+    private static final long OCTET_LOW;
+    private static final long OCTET_HIGH;
+
+    /*
+     * The characters of a cookie attribute value (av-octet) of RFC 6265:
+     * printable ASCII and space, except semicolon.
+     */
+    private static final long ATTRIBUTE_LOW;
+    private static final long ATTRIBUTE_HIGH;
+
+    static {
+        long[] masks = masks("!#$%&'*+-.^_`|~0123456789"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz");
+        TCHAR_LOW = masks[0];
+        TCHAR_HIGH = masks[1];
+
+        StringBuilder octets = new StringBuilder(95);
+        StringBuilder attribute = new StringBuilder(95);
+        for (char c = 0x20; c < 0x7f; c++) {
+            if (" \",;\\".indexOf(c) == -1) {
+                octets.append(c);
+            }
+            if (c != ';') {
+                attribute.append(c);
+            }
+        }
+        masks = masks(octets.toString());
+        OCTET_LOW = masks[0];
+        OCTET_HIGH = masks[1];
+        masks = masks(attribute.toString());
+        ATTRIBUTE_LOW = masks[0];
+        ATTRIBUTE_HIGH = masks[1];
+    }
+
+    private HttpTokens() { }
+
+    /**
+     * Returns whether the given character is a token character.
+     *
+     * @param c the character
+     *
+     * @return <code>true</code> if the character may appear in a token
+     */
+    public static boolean isTokenChar(int c) {
+        return matches(c, TCHAR_LOW, TCHAR_HIGH);
+    }
+
+    /**
+     * Returns whether the given sequence is a token: a non-empty sequence
+     * of token characters.
+     *
+     * @param s the sequence to test
+     *
+     * @return <code>true</code> if the sequence is a token
+     */
+    public static boolean isToken(CharSequence s) {
+        return s.length() > 0 && matches(s, TCHAR_LOW, TCHAR_HIGH);
+    }
+
+    /**
+     * Returns whether the given character is a cookie-octet, a character
+     * that may appear in the value of a cookie.
+     *
+     * @param c the character
+     *
+     * @return <code>true</code> if the character may appear in a cookie
+     * value
+     */
+    public static boolean isCookieOctet(int c) {
+        return matches(c, OCTET_LOW, OCTET_HIGH);
+    }
+
+    /**
+     * Returns whether the given character may appear in the value of a
+     * cookie attribute, such as <i>Domain</i> or <i>Path</i>: any
+     * printable ASCII character or space, except a semicolon.
+     *
+     * @param c the character
+     *
+     * @return <code>true</code> if the character may appear in a cookie
+     * attribute value
+     */
+    public static boolean isCookieAttributeChar(int c) {
+        return matches(c, ATTRIBUTE_LOW, ATTRIBUTE_HIGH);
+    }
+
+    /*
+     * Returns the masks of the given characters, which must be ASCII:
+     * the low mask at index 0 and the high mask at index 1.
+     */
+    static long[] masks(String chars) {
+        long[] masks = new long[2];
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            masks[c >> 6] |= 1L << c;
+        }
+        return masks;
+    }
+
+    /*
+     * Returns whether the given character is in the class of the given
+     * masks.
+     */
+    static boolean matches(int c, long low, long high) {
+        return c >= 0 && c < 128 && (((c < 64 ? low : high) >>> c) & 1L) != 0;
+    }
+
+    /*
+     * Returns whether every character of the given sequence is in the
+     * class of the given masks.
+     */
+    static boolean matches(CharSequence s, long low, long high) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            if (!matches(s.charAt(i), low, high)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -72,6 +72,8 @@ public class HttpUtils {
      * 			from the parsed key-value pairs
      *
      * @exception IllegalArgumentException if the query string is invalid
+     *
+     * @see QueryParameters
      */
     public static Hashtable<String, String[]> parseQueryString(String s) {
 
@@ -146,6 +148,8 @@ public class HttpUtils {
      *
      * @exception IllegalArgumentException if the data
      * sent by the POST method is invalid
+     *
+     * @see FormDataParser
      */
     public static Hashtable<String, String[]> parsePostData(int len, 
                 ServletInputStream in) {
@@ -255,28 +259,16 @@ public class HttpUtils {
      * 
      * @return		a <code>StringBuffer</code> object containing
      *			the reconstructed URL
+     *
+     * @see HttpServletRequest#appendRequestURL
      */
     public static StringBuffer getRequestURL (HttpServletRequest req) {
-        StringBuffer url = new StringBuffer();
-        String scheme = req.getScheme ();
-        int port = req.getServerPort ();
+        String prefix = RequestURLPrefixes.get(req);
         String urlPath = req.getRequestURI();
+        StringBuffer url =
+            new StringBuffer(prefix.length() + urlPath.length() + 16);
 
-        //String		servletPath = req.getServletPath ();
-        //String		pathInfo = req.getPathInfo ();
-
-        url.append (scheme);		// http, https
-        url.append ("://");
-        url.append (req.getServerName ());
-        if ((scheme.equals ("http") && port != 80)
-        || (scheme.equals ("https") && port != 443)) {
-            url.append (':');
-            url.append (req.getServerPort ());
-        }
-        //if (servletPath != null)
-        //    url.append (servletPath);
-        //if (pathInfo != null)
-        //    url.append (pathInfo);
+        url.append(prefix);		// scheme://host[:port]
         url.append(urlPath);
 
         return url;
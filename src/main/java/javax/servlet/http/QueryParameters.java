@@ -0,0 +1,389 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An ordered, read-only view of the name-value pairs of a query string,
+ * or of any other <code>application/x-www-form-urlencoded</code> string.
+ *
+ * <p>{@link #parse(String, Charset)} scans the query string once and only
+ * records where each name and value starts and ends. Names and values are
+ * decoded when they are first asked for, and then kept, so parameters that
+ * are never read are never decoded. Names and values that contain neither
+ * <code>%</code> nor <code>+</code> need no decoding at all and are simply
+ * extracted from the query string.
+ *
+ * <p>Pairs are kept in the order in which they appear in the query string,
+ * and a name may appear in more than one pair. A pair without a
+ * <code>=</code> character has an empty value; empty pairs, as in
+ * <code>a=1&amp;&amp;b=2</code>, are skipped.
+ *
+ * <p>Instances of this class are not thread-safe; they are meant to be
+ * used while processing a single request.
+ *
+ * @see HttpUtils#parseQueryString
+ *
+ * @since Servlet 4.1
+ */
+public final class QueryParameters {
+
+    // flags recording which parts of a pair need decoding
+    private static final byte NAME_ENCODED = 1;
+    private static final byte VALUE_ENCODED = 2;
+
+    private static final int[] NO_OFFSETS = new int[0];
+    private static final byte[] NO_FLAGS = new byte[0];
+
+    private final String query;
+    private final Charset charset;
+
+    /*
+     * For each pair, the start and end of its name and the end of its
+     * value; the value starts after the '=' following the name, if any.
+     */
+    private final int[] offsets;
+    private final byte[] flags;
+    private final int size;
+
+    /*
+     * The decoded names and values, two entries per pair, filled in as
+     * they are asked for.
+     */
+    private String[] decoded;
+
+    private QueryParameters(String query, Charset charset, int[] offsets,
+                            byte[] flags, int size) {
+        this.query = query;
+        this.charset = charset;
+        this.offsets = offsets;
+        this.flags = flags;
+        this.size = size;
+    }
+
+    /**
+     * Parses a query string whose names and values are encoded in UTF-8.
+     *
+     * @param query the query string to parse, without the leading
+     *              <code>?</code>
+     *
+     * @return the parameters of the query string
+     *
+     * @throws NullPointerException if <code>query</code> is null
+     */
+    public static QueryParameters parse(String query) {
+        return parse(query, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a query string whose names and values are encoded in the
+     * given character set.
+     *
+     * <p>Escape sequences are only checked when a name or value is
+     * decoded, so a malformed escape sequence causes an
+     * <code>IllegalArgumentException</code> to be thrown by the method
+     * returning the name or value containing it.
+     *
+     * @param query   the query string to parse, without the leading
+     *                <code>?</code>
+     *
+     * @param charset the character set in which the bytes represented
+     *                by escape sequences are to be decoded
+     *
+     * @return the parameters of the query string
+     *
+     * @throws NullPointerException if <code>query</code> or
+     *                <code>charset</code> is null
+     */
+    public static QueryParameters parse(String query, Charset charset) {
+        if (charset == null) {
+            throw new NullPointerException("Charset cannot be null");
+        }
+        int len = query.length();
+        if (len == 0) {
+            return new QueryParameters(query, charset, NO_OFFSETS, NO_FLAGS, 0);
+        }
+
+        int capacity = 4;
+        int[] offsets = new int[3 * capacity];
+        byte[] flags = new byte[capacity];
+        int size = 0;
+
+        int start = 0;
+        int nameEnd = -1;
+        byte flag = 0;
+        for (int i = 0; i <= len; i++) {
+            char c = (i < len) ? query.charAt(i) : '&';
+            switch (c) {
+            case '&':
+                if (i > start) {
+                    if (size == capacity) {
+                        capacity *= 2;
+                        offsets = Arrays.copyOf(offsets, 3 * capacity);
+                        flags = Arrays.copyOf(flags, capacity);
+                    }
+                    offsets[3 * size] = start;
+                    offsets[3 * size + 1] = (nameEnd == -1) ? i : nameEnd;
+                    offsets[3 * size + 2] = i;
+                    flags[size] = flag;
+                    size++;
+                }
+                start = i + 1;
+                nameEnd = -1;
+                flag = 0;
+                break;
+            case '=':
+                if (nameEnd == -1) {
+                    nameEnd = i;
+                }
+                break;
+            case '%':
+            case '+':
+                flag |= (nameEnd == -1) ? NAME_ENCODED : VALUE_ENCODED;
+                break;
+            default:
+                break;
+            }
+        }
+        return new QueryParameters(query, charset, offsets, flags, size);
+    }
+
+    /**
+     * Returns the number of name-value pairs.
+     *
+     * @return the number of name-value pairs in the query string
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the decoded name of the pair at the given index.
+     *
+     * @param index the index of the pair, in the order of the query string
+     *
+     * @return the decoded name of the pair
+     *
+     * @throws IndexOutOfBoundsException if <code>index</code> is negative
+     *  or not less than {@link #size}
+     *
+     * @throws IllegalArgumentException if the name contains a malformed
+     *  escape sequence
+     */
+    public String getName(int index) {
+        checkIndex(index);
+        return decoded(2 * index, offsets[3 * index],
+            offsets[3 * index + 1], (flags[index] & NAME_ENCODED) != 0);
+    }
+
+    /**
+     * Returns the decoded value of the pair at the given index.
+     *
+     * @param index the index of the pair, in the order of the query string
+     *
+     * @return the decoded value of the pair, which is empty if the pair
+     *  has no <code>=</code> character
+     *
+     * @throws IndexOutOfBoundsException if <code>index</code> is negative
+     *  or not less than {@link #size}
+     *
+     * @throws IllegalArgumentException if the value contains a malformed
+     *  escape sequence
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        int nameEnd = offsets[3 * index + 1];
+        int valueEnd = offsets[3 * index + 2];
+        return decoded(2 * index + 1, Math.min(nameEnd + 1, valueEnd),
+            valueEnd, (flags[index] & VALUE_ENCODED) != 0);
+    }
+
+    /**
+     * Returns the first value of the parameter with the given name.
+     *
+     * @param name the decoded name of the parameter
+     *
+     * @return the decoded value of the first pair with the given name,
+     *  or <code>null</code> if there is no such pair
+     *
+     * @throws IllegalArgumentException if a name compared with, or the
+     *  value returned, contains a malformed escape sequence
+     */
+    public String getParameter(String name) {
+        int index = indexOf(name, 0);
+        return (index == -1) ? null : getValue(index);
+    }
+
+    /**
+     * Returns all the values of the parameter with the given name.
+     *
+     * @param name the decoded name of the parameter
+     *
+     * @return the decoded values of the pairs with the given name, in
+     *  the order of the query string, or <code>null</code> if there is
+     *  no such pair
+     *
+     * @throws IllegalArgumentException if a name compared with, or a
+     *  value returned, contains a malformed escape sequence
+     */
+    public String[] getParameterValues(String name) {
+        int first = indexOf(name, 0);
+        if (first == -1) {
+            return null;
+        }
+        int count = 1;
+        for (int i = first; (i = indexOf(name, i + 1)) != -1; ) {
+            count++;
+        }
+        String[] values = new String[count];
+        for (int i = first, n = 0; n < count; i = indexOf(name, i + 1)) {
+            values[n++] = getValue(i);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the distinct names of the parameters, in the order in which
+     * they first appear in the query string.
+     *
+     * @return an unmodifiable set of the decoded parameter names
+     *
+     * @throws IllegalArgumentException if a name contains a malformed
+     *  escape sequence
+     */
+    public Set<String> getParameterNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (int i = 0; i < size; i++) {
+            names.add(getName(i));
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Returns the parameters as a map from each name to all of its values,
+     * in the form returned by
+     * {@link javax.servlet.ServletRequest#getParameterMap}.
+     *
+     * @return an unmodifiable map, ordered by the first occurrence of
+     *  each name in the query string
+     *
+     * @throws IllegalArgumentException if a name or value contains a
+     *  malformed escape sequence
+     */
+    public Map<String, String[]> getParameterMap() {
+        Map<String, List<String>> lists =
+            new LinkedHashMap<String, List<String>>();
+        for (int i = 0; i < size; i++) {
+            String name = getName(i);
+            List<String> values = lists.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                lists.put(name, values);
+            }
+            values.add(getValue(i));
+        }
+        Map<String, String[]> map = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<String, List<String>> e : lists.entrySet()) {
+            List<String> values = e.getValue();
+            map.put(e.getKey(), values.toArray(new String[values.size()]));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /*
+     * Returns the index of the first pair at or after the given index
+     * whose decoded name equals the given name, or -1.  Names that need
+     * no decoding are compared in place.
+     */
+    private int indexOf(String name, int from) {
+        int nameLength = name.length();
+        for (int i = from; i < size; i++) {
+            int start = offsets[3 * i];
+            int end = offsets[3 * i + 1];
+            if ((flags[i] & NAME_ENCODED) == 0) {
+                if (end - start == nameLength
+                        && query.regionMatches(start, name, 0, nameLength)) {
+                    return i;
+                }
+            } else if (getName(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Returns the decoded form of the given region of the query string,
+     * decoding it the first time it is asked for.
+     */
+    private String decoded(int slot, int start, int end, boolean encoded) {
+        String[] cache = decoded;
+        if (cache == null) {
+            cache = new String[2 * size];
+            decoded = cache;
+        }
+        String value = cache[slot];
+        if (value == null) {
+            value = encoded
+                ? URICodec.decode(query, start, end,
+                                  URICodec.Component.QUERY, charset)
+                : query.substring(start, end);
+            cache[slot] = value;
+        }
+        return value;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+/**
+ * A request wrapper that buffers the body of the request, so that it can
+ * be read more than once, for filters that need to read the body before
+ * the servlet does, such as filters verifying signatures or logging
+ * requests.
+ *
+ * <p>The body is read from the wrapped request, in blocking mode, the
+ * first time it is needed. Up to a memory threshold, it is held in a
+ * chain of fixed-size chunks taken from a pool shared with
+ * {@link CapturingHttpServletResponseWrapper}; the rest is spilled to a
+ * temporary file.
+ *
+ * <p>Every call to {@link #getInputStream} or {@link #getReader} returns
+ * a new stream or reader that reads the body from its beginning, so both
+ * may be used, any number of times. The input streams support
+ * {@link ServletInputStream#setReadListener}: since the whole body is
+ * available, the listener is called from a container thread, through
+ * {@link javax.servlet.AsyncContext#start}, as soon as it is set.
+ *
+ * <p>If the body consists of form data, the parameters of the request
+ * are parsed from the buffered body, together with those of the query
+ * string, since the wrapped request can no longer read the body itself.
+ *
+ * <p>When the request has been processed, {@link #release} must be
+ * called, so that the chunks are returned to the pool and any temporary
+ * file is deleted.
+ *
+ * @since Servlet 4.1
+ */
+public class ReplayableHttpServletRequestWrapper
+        extends HttpServletRequestWrapper {
+
+    /**
+     * The number of bytes of a body kept in memory by default, one
+     * megabyte.
+     */
+    public static final long DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final String FORM_CONTENT_TYPE =
+        "application/x-www-form-urlencoded";
+
+    private final ChunkedBuffer buffer;
+    private final long maxLength;
+    private boolean buffered;
+    private IOException failure;    // why the body could not be buffered
+    private Map<String, String[]> parameters;
+
+    /**
+     * Constructs a wrapper buffering the body of the given request,
+     * keeping up to {@link #DEFAULT_MEMORY_THRESHOLD} bytes in memory,
+     * with no limit on the length of the body.
+     *
+     * @param request the request to wrap
+     *
+     * @throws IllegalArgumentException if the request is null
+     */
+    public ReplayableHttpServletRequestWrapper(HttpServletRequest request) {
+        this(request, DEFAULT_MEMORY_THRESHOLD, -1);
+    }
+
+    /**
+     * Constructs a wrapper buffering the body of the given request.
+     *
+     * @param request         the request to wrap
+     *
+     * @param memoryThreshold the number of bytes kept in memory before
+     *                        the body is spilled to a temporary file, or
+     *                        -1 to keep the whole body in memory
+     *
+     * @param maxLength       the maximum length of the body, or -1 for
+     *                        no limit
+     *
+     * @throws IllegalArgumentException if the request is null
+     */
+    public ReplayableHttpServletRequestWrapper(HttpServletRequest request,
+                                               long memoryThreshold,
+                                               long maxLength) {
+        super(request);
+        this.buffer = new ChunkedBuffer(memoryThreshold);
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns a new input stream reading the buffered body from its
+     * beginning.
+     *
+     * @return an input stream over the body
+     *
+     * @throws IOException if the body cannot be read from the wrapped
+     * request, exceeds the maximum length, or has been released
+     */
+    @Override
+    public ServletInputStream getInputStream() throws IOException {
+        buffer();
+        return new ReplayInputStream();
+    }
+
+    /**
+     * Returns a new reader reading the buffered body from its beginning,
+     * decoded in the character encoding of the request, or ISO-8859-1
+     * if the request does not specify one.
+     *
+     * @return a reader over the body
+     *
+     * @throws UnsupportedEncodingException if the character encoding of
+     * the request is not supported
+     *
+     * @throws IOException if the body cannot be read from the wrapped
+     * request, exceeds the maximum length, or has been released
+     */
+    @Override
+    public BufferedReader getReader() throws IOException {
+        String encoding = getCharacterEncoding();
+        if (encoding == null) {
+            encoding = "ISO-8859-1";
+        }
+        InputStreamReader reader =
+            new InputStreamReader(getInputStream(), encoding);
+        return new BufferedReader(reader);
+    }
+
+    /**
+     * Returns the length of the body, reading it from the wrapped request
+     * if it has not been read yet.
+     *
+     * @return the length of the body, in bytes
+     *
+     * @throws IOException if the body cannot be read from the wrapped
+     * request, exceeds the maximum length, or has been released
+     */
+    public long getBodyLength() throws IOException {
+        buffer();
+        return buffer.size();
+    }
+
+    /**
+     * Returns a copy of the body, reading it from the wrapped request if
+     * it has not been read yet.
+     *
+     * @return the body
+     *
+     * @throws IOException if the body cannot be read from the wrapped
+     * request, exceeds the maximum length, or has been released
+     */
+    public byte[] getBodyBytes() throws IOException {
+        buffer();
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Discards the buffered body, returning the memory it used to the pool
+     * and deleting its temporary file, if any. The body cannot be read
+     * any more afterwards: the methods reading it throw an
+     * <code>IOException</code>.
+     *
+     * @throws IOException if the temporary file cannot be closed
+     */
+    public void release() throws IOException {
+        if (failure == null) {
+            failure = new IOException(
+                lStrings.getString("err.body.released"));
+        }
+        buffer.release();
+    }
+
+    /**
+     * The default behavior of this method is to return getParameter(String
+     * name) on the wrapped request object, unless the body consists of
+     * form data, in which case the parameter is looked up among the
+     * parameters parsed from the query string and the buffered body.
+     */
+    @Override
+    public String getParameter(String name) {
+        Map<String, String[]> params = getFormParameters();
+        if (params == null) {
+            return super.getParameter(name);
+        }
+        String[] values = params.get(name);
+        return (values == null) ? null : values[0];
+    }
+
+    /**
+     * The default behavior of this method is to return
+     * getParameterValues(String name) on the wrapped request object,
+     * unless the body consists of form data, in which case the values
+     * are looked up among the parameters parsed from the query string and
+     * the buffered body.
+     */
+    @Override
+    public String[] getParameterValues(String name) {
+        Map<String, String[]> params = getFormParameters();
+        if (params == null) {
+            return super.getParameterValues(name);
+        }
+        String[] values = params.get(name);
+        return (values == null) ? null : values.clone();
+    }
+
+    /**
+     * The default behavior of this method is to return getParameterNames()
+     * on the wrapped request object, unless the body consists of form
+     * data, in which case the names of the parameters parsed from the
+     * query string and the buffered body are returned.
+     */
+    @Override
+    public Enumeration<String> getParameterNames() {
+        Map<String, String[]> params = getFormParameters();
+        if (params == null) {
+            return super.getParameterNames();
+        }
+        return Collections.enumeration(params.keySet());
+    }
+
+    /**
+     * The default behavior of this method is to return getParameterMap()
+     * on the wrapped request object, unless the body consists of form
+     * data, in which case the parameters parsed from the query string and
+     * the buffered body are returned.
+     */
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        Map<String, String[]> params = getFormParameters();
+        if (params == null) {
+            return super.getParameterMap();
+        }
+        return params;
+    }
+
+    /*
+     * Reads the body from the wrapped request, the first time it is
+     * needed.  If it cannot be read, or exceeds the maximum length, the
+     * failure is recorded and thrown again by every later call, so that
+     * a truncated body is never replayed.
+     */
+    private void buffer() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (buffered) {
+            return;
+        }
+        try {
+            buffer.readFrom(super.getInputStream(), maxLength);
+            if (maxLength >= 0 && buffer.size() > maxLength) {
+                String errMsg = lStrings.getString("err.body.too_large");
+                Object[] errArgs = new Object[1];
+                errArgs[0] = String.valueOf(maxLength);
+                errMsg = MessageFormat.format(errMsg, errArgs);
+                throw new IOException(errMsg);
+            }
+        } catch (IOException e) {
+            failure = e;
+            try {
+                buffer.release();
+            } catch (IOException x) {
+                e.addSuppressed(x);
+            }
+            throw e;
+        }
+        buffered = true;
+    }
+
+    /*
+     * Returns the parameters of the query string and of the buffered
+     * body, as an unmodifiable map, if the body of this POST request
+     * consists of form data; otherwise null.  As containers do, this
+     * ignores what cannot be decoded: query string pairs with malformed
+     * escape sequences are skipped, and so are the parameters of a body
+     * which cannot be read or parsed; an unsupported character encoding
+     * is replaced by ISO-8859-1.
+     */
+    private Map<String, String[]> getFormParameters() {
+        if (parameters != null) {
+            return parameters;
+        }
+        String contentType = getContentType();
+        if (!"POST".equals(getMethod()) || contentType == null
+                || !contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0,
+                                              FORM_CONTENT_TYPE.length())) {
+            return null;
+        }
+
+        Charset charset = StandardCharsets.ISO_8859_1;
+        String encoding = getCharacterEncoding();
+        if (encoding != null) {
+            try {
+                charset = Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                // unsupported or illegal name: keep the default
+            }
+        }
+
+        Map<String, List<String>> lists =
+            new LinkedHashMap<String, List<String>>();
+        String query = getQueryString();
+        if (query != null) {
+            QueryParameters params = QueryParameters.parse(query, charset);
+            for (int i = 0; i < params.size(); i++) {
+                try {
+                    add(lists, params.getName(i), params.getValue(i));
+                } catch (IllegalArgumentException e) {
+                    // malformed escape sequence: skip the pair
+                }
+            }
+        }
+
+        Map<String, String[]> body = Collections.emptyMap();
+        try {
+            buffer();
+            FormDataParser parser = new FormDataParser(charset, -1, -1);
+            byte[] buf = new byte[ChunkedBuffer.CHUNK_SIZE];
+            long position = 0;
+            int n;
+            while ((n = buffer.read(position, buf, 0, buf.length)) != -1) {
+                parser.update(buf, 0, n);
+                position += n;
+            }
+            body = parser.finish();
+        } catch (IOException | IllegalArgumentException e) {
+            // unreadable or malformed body: only the query string counts
+        }
+        for (Map.Entry<String, String[]> e : body.entrySet()) {
+            for (String value : e.getValue()) {
+                add(lists, e.getKey(), value);
+            }
+        }
+
+        Map<String, String[]> map = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<String, List<String>> e : lists.entrySet()) {
+            List<String> values = e.getValue();
+            map.put(e.getKey(), values.toArray(new String[values.size()]));
+        }
+        parameters = Collections.unmodifiableMap(map);
+        return parameters;
+    }
+
+    private static void add(Map<String, List<String>> lists, String name,
+                            String value) {
+        List<String> values = lists.get(name);
+        if (values == null) {
+            values = new ArrayList<String>(1);
+            lists.put(name, values);
+        }
+        values.add(value);
+    }
+
+    /*
+     * Reads the buffered body.  Since the whole body is available, the
+     * stream is always ready, and a ReadListener is called as soon as it
+     * is set, from a container thread.
+     */
+    private class ReplayInputStream extends ServletInputStream {
+
+        private long position;
+        private long mark;
+        private final byte[] single = new byte[1];
+
+        @Override
+        public int read() throws IOException {
+            int n = buffer.read(position, single, 0, 1);
+            if (n <= 0) {
+                return -1;
+            }
+            position++;
+            return single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            int n = buffer.read(position, b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        protected int peek(byte[] b, int off, int len) throws IOException {
+            return Math.max(0, buffer.read(position, b, off, len));
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, buffer.size() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(buffer.size() - position,
+                                  Integer.MAX_VALUE);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return position >= buffer.size();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(final ReadListener readListener) {
+            if (readListener == null) {
+                throw new NullPointerException("ReadListener cannot be null");
+            }
+            if (!isAsyncStarted()) {
+                throw new IllegalStateException(
+                    lStrings.getString("err.ise.readListener"));
+            }
+            getAsyncContext().start(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (!isFinished()) {
+                            readListener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            readListener.onAllDataRead();
+                        }
+                    } catch (Throwable t) {
+                        readListener.onError(t);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+/**
+ * Builds the <code>scheme://host[:port]</code> prefixes of reconstructed
+ * request URLs, keeping the prefixes of recently seen virtual hosts and
+ * connectors so that they are not built again for every request.
+ */
+final class RequestURLPrefixes {
+
+    // number of cached prefixes, a power of two
+    private static final int CACHE_SIZE = 64;
+
+    /*
+     * The cache is direct-mapped on the host and port.  Entries are
+     * immutable and safely published through their final fields, so
+     * unsynchronized reads and writes of the array are harmless: a thread
+     * sees either an older entry or a newer one, and checks it anyway.
+     */
+    private static final Prefix[] cache = new Prefix[CACHE_SIZE];
+
+    private RequestURLPrefixes() { }
+
+    /*
+     * Returns the prefix for the given scheme, server name and port.  The
+     * port is left out if it is the default port of the scheme, 80 for
+     * http and 443 for https, as HttpUtils.getRequestURL has always done.
+     */
+    static String get(String scheme, String host, int port) {
+        int index = (host.hashCode() * 31 + port) & (CACHE_SIZE - 1);
+        Prefix prefix = cache[index];
+        if (prefix == null || prefix.port != port
+                || !prefix.host.equals(host)
+                || !prefix.scheme.equals(scheme)) {
+            prefix = new Prefix(scheme, host, port);
+            cache[index] = prefix;
+        }
+        return prefix.value;
+    }
+
+    /*
+     * Returns the prefix of the URL of the given request.
+     */
+    static String get(HttpServletRequest req) {
+        return get(req.getScheme(), req.getServerName(), req.getServerPort());
+    }
+
+    private static final class Prefix {
+
+        final String scheme;
+        final String host;
+        final int port;
+        final String value;
+
+        Prefix(String scheme, String host, int port) {
+            this.scheme = scheme;
+            this.host = host;
+            this.port = port;
+
+            StringBuilder sb =
+                new StringBuilder(scheme.length() + host.length() + 9);
+            sb.append(scheme).append("://").append(host);
+            if ((scheme.equals("http") && port != 80)
+                    || (scheme.equals("https") && port != 443)) {
+                sb.append(':').append(port);
+            }
+            this.value = sb.toString();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+
+/*
+ * The writer of a response wrapper that buffers or transforms the body.
+ * The characters written are encoded into the output stream of the
+ * wrapper, and those not flushed yet can be discarded, so that text
+ * written before the buffer of the response is reset does not leak into
+ * the new body, while the writer remains usable.
+ */
+// package private
+final class ResettablePrintWriter extends PrintWriter {
+
+    private final Sink sink;
+
+    ResettablePrintWriter(OutputStream out, String charset)
+            throws UnsupportedEncodingException {
+        this(new Sink(out), charset);
+    }
+
+    private ResettablePrintWriter(Sink sink, String charset)
+            throws UnsupportedEncodingException {
+        super(new OutputStreamWriter(sink, charset));
+        this.sink = sink;
+    }
+
+    /*
+     * Drops the characters written but not flushed to the output stream.
+     */
+    void discard() {
+        sink.discarding = true;
+        try {
+            flush();
+        } finally {
+            sink.discarding = false;
+        }
+    }
+
+    /*
+     * Passes the encoded characters to the output stream, unless they are
+     * being discarded.
+     */
+    private static final class Sink extends OutputStream {
+
+        private final OutputStream out;
+        boolean discarding;
+
+        Sink(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!discarding) {
+                out.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!discarding) {
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!discarding) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
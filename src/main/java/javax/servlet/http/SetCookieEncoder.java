@@ -0,0 +1,143 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+
+/**
+ * Renders cookies as the values of <code>Set-Cookie</code> response
+ * headers, as defined by RFC 6265. Shared by {@link Cookie} and
+ * {@link CookieTemplate}.
+ */
+final class SetCookieEncoder {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // sent with Max-Age=0 for clients that only understand Expires
+    private static final String EPOCH = "Thu, 01 Jan 1970 00:00:00 GMT";
+
+    private SetCookieEncoder() { }
+
+    /*
+     * Returns the value of a Set-Cookie header for the given cookie
+     * attributes.  The comment and version of a cookie have no place in
+     * an RFC 6265 header and are not rendered.  A non-negative maximum
+     * age is rendered as Max-Age, and a maximum age of zero also as an
+     * Expires attribute in the past, so that the header does not depend
+     * on the current time.
+     */
+    static String encode(String name, String value, String domain,
+                         int maxAge, String path, boolean secure,
+                         boolean httpOnly) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(name).append('=');
+        if (value != null) {
+            checkValue(name, value);
+            sb.append(value);
+        }
+        if (maxAge >= 0) {
+            sb.append("; Max-Age=").append(maxAge);
+            if (maxAge == 0) {
+                sb.append("; Expires=").append(EPOCH);
+            }
+        }
+        if (domain != null) {
+            checkAttribute(name, domain);
+            sb.append("; Domain=").append(domain);
+        }
+        if (path != null) {
+            checkAttribute(name, path);
+            sb.append("; Path=").append(path);
+        }
+        if (secure) {
+            sb.append("; Secure");
+        }
+        if (httpOnly) {
+            sb.append("; HttpOnly");
+        }
+        return sb.toString();
+    }
+
+    /*
+     * A value is a sequence of cookie-octets, which may be enclosed in
+     * double quotes.
+     */
+    private static void checkValue(String name, String value) {
+        int start = 0;
+        int end = value.length();
+        if (end > 1 && value.charAt(0) == '"'
+                && value.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (!HttpTokens.isCookieOctet(value.charAt(i))) {
+                throw invalid("err.cookie_value_invalid", name, value);
+            }
+        }
+    }
+
+    /*
+     * An attribute value is any sequence of characters other than
+     * controls and semicolons.
+     */
+    private static void checkAttribute(String name, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!HttpTokens.isCookieAttributeChar(value.charAt(i))) {
+                throw invalid("err.cookie_attribute_invalid", name, value);
+            }
+        }
+    }
+
+    private static IllegalArgumentException invalid(String key, String name,
+                                                    String value) {
+        String errMsg = lStrings.getString(key);
+        Object[] errArgs = new Object[2];
+        errArgs[0] = name;
+        errArgs[1] = value;
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new IllegalArgumentException(errMsg);
+    }
+}
@@ -0,0 +1,453 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+
+/**
+ * Percent-decoding and percent-encoding of the components of URIs and of
+ * cookie values.
+ *
+ * <p>The rules depend on the kind of component, given as a
+ * {@link Component}: in a query component, as in
+ * <code>application/x-www-form-urlencoded</code> data, a <code>+</code>
+ * stands for a space, whereas it is an ordinary character in a path
+ * segment or a cookie value.
+ *
+ * <p>Decoding returns the given string itself when it contains nothing to
+ * decode. Otherwise UTF-8 is decoded in a single pass over the string,
+ * including multi-byte sequences spread over several escape sequences;
+ * other character sets are supported as well. Encoding always uses UTF-8
+ * and appends to a caller-supplied <code>StringBuilder</code> or
+ * <code>ByteBuffer</code>, so that nothing needs to be allocated when
+ * encoding into a reused buffer.
+ *
+ * @since Servlet 4.1
+ */
+public final class URICodec {
+
+    /**
+     * The kinds of component {@link URICodec} can decode and encode.
+     */
+    public enum Component {
+
+        /**
+         * A segment of the path of a URI (RFC 3986). Characters other
+         * than unreserved characters, sub-delimiters, <code>:</code> and
+         * <code>@</code> are encoded, including <code>/</code>.
+         */
+        PATH_SEGMENT("!$&'()*+,-.0123456789:;=@"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz~", false),
+
+        /**
+         * A name or value of a query string or of form data, encoded as
+         * <code>application/x-www-form-urlencoded</code>: a space is
+         * encoded as <code>+</code>, and characters other than letters,
+         * digits and <code>*-._</code> are percent-encoded.
+         */
+        QUERY("*-.0123456789"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz", true),
+
+        /**
+         * The value of a cookie. Characters that are not allowed in a
+         * cookie value by RFC 6265, and <code>%</code>, are encoded.
+         */
+        COOKIE_VALUE("!#$&'()*+-./0123456789:<=>?@"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZ[]^_`abcdefghijklmnopqrstuvwxyz{|}~",
+            false);
+
+        // the characters that need no encoding, as HttpTokens bit masks
+        private final long low;
+        private final long high;
+        private final boolean plusIsSpace;
+
+        private Component(String literals, boolean plusIsSpace) {
+            long[] masks = HttpTokens.masks(literals);
+            this.low = masks[0];
+            this.high = masks[1];
+            this.plusIsSpace = plusIsSpace;
+        }
+
+        private boolean isLiteral(int c) {
+            return HttpTokens.matches(c, low, high);
+        }
+    }
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private URICodec() { }
+
+    /**
+     * Decodes a component encoded in UTF-8.
+     *
+     * @param s         the encoded component
+     *
+     * @param component the kind of component
+     *
+     * @return the decoded component, which is <code>s</code> itself if
+     *  it contains nothing to decode
+     *
+     * @throws IllegalArgumentException if <code>s</code> contains a
+     *  malformed escape sequence
+     */
+    public static String decode(String s, Component component) {
+        return decode(s, 0, s.length(), component, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a component, the bytes of which are encoded in the given
+     * character set.
+     *
+     * @param s         the encoded component
+     *
+     * @param component the kind of component
+     *
+     * @param charset   the character set of the encoded bytes
+     *
+     * @return the decoded component, which is <code>s</code> itself if
+     *  it contains nothing to decode
+     *
+     * @throws IllegalArgumentException if <code>s</code> contains a
+     *  malformed escape sequence
+     */
+    public static String decode(String s, Component component,
+                                Charset charset) {
+        return decode(s, 0, s.length(), component, charset);
+    }
+
+    /*
+     * Decodes the given region of a string; returns the region itself if
+     * it contains nothing to decode.
+     */
+    static String decode(String s, int start, int end, Component component,
+                         Charset charset) {
+        int i = start;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '%' || (c == '+' && component.plusIsSpace)) {
+                break;
+            }
+            i++;
+        }
+        if (i == end) {
+            return (start == 0 && end == s.length())
+                ? s : s.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(s, start, i);
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            decodeUTF8(s, start, i, end, component, sb);
+        } else {
+            decode(s, start, i, end, component, charset, sb);
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Decodes UTF-8 in a single pass.  Malformed UTF-8 sequences are
+     * replaced with U+FFFD, as String(byte[], Charset) would do.
+     */
+    private static void decodeUTF8(String s, int start, int i, int end,
+                                   Component component, StringBuilder sb) {
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '+' && component.plusIsSpace) {
+                sb.append(' ');
+                i++;
+                continue;
+            } else if (c != '%') {
+                sb.append(c);
+                i++;
+                continue;
+            }
+
+            int b = unescape(s, start, i, end);
+            i += 3;
+            if (b < 0x80) {
+                sb.append((char) b);
+                continue;
+            }
+
+            int more;
+            int cp;
+            if ((b & 0xe0) == 0xc0) {
+                more = 1;
+                cp = b & 0x1f;
+            } else if ((b & 0xf0) == 0xe0) {
+                more = 2;
+                cp = b & 0x0f;
+            } else if ((b & 0xf8) == 0xf0) {
+                more = 3;
+                cp = b & 0x07;
+            } else {
+                sb.append(REPLACEMENT);
+                continue;
+            }
+            int min = (more == 1) ? 0x80 : (more == 2) ? 0x800 : 0x10000;
+            for (; more > 0; more--) {
+                if (i >= end || s.charAt(i) != '%') {
+                    break;
+                }
+                int next = unescape(s, start, i, end);
+                if ((next & 0xc0) != 0x80) {
+                    break;
+                }
+                cp = (cp << 6) | (next & 0x3f);
+                i += 3;
+            }
+            if (more > 0 || cp < min || cp > Character.MAX_CODE_POINT
+                    || (cp >= Character.MIN_SURROGATE
+                        && cp <= Character.MAX_SURROGATE)) {
+                sb.append(REPLACEMENT);
+            } else {
+                sb.appendCodePoint(cp);
+            }
+        }
+    }
+
+    /*
+     * Decodes a region in any character set: consecutive escape sequences
+     * are collected and decoded together.
+     */
+    private static void decode(String s, int start, int i, int end,
+                               Component component, Charset charset,
+                               StringBuilder sb) {
+        byte[] bytes = null;
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '+' && component.plusIsSpace) {
+                sb.append(' ');
+                i++;
+            } else if (c == '%') {
+                if (bytes == null) {
+                    bytes = new byte[(end - i) / 3];
+                }
+                int count = 0;
+                while (i < end && s.charAt(i) == '%') {
+                    bytes[count++] = (byte) unescape(s, start, i, end);
+                    i += 3;
+                }
+                sb.append(new String(bytes, 0, count, charset));
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+    }
+
+    /*
+     * Returns the byte represented by the escape sequence at position i of
+     * the region being decoded.
+     */
+    private static int unescape(String s, int start, int i, int end) {
+        if (i + 2 >= end) {
+            throw invalidEscape(s, start, end);
+        }
+        int hi = hexDigit(s.charAt(i + 1));
+        int lo = hexDigit(s.charAt(i + 2));
+        if (hi == -1 || lo == -1) {
+            throw invalidEscape(s, start, end);
+        }
+        return (hi << 4) + lo;
+    }
+
+    /*
+     * Returns the value of the given hexadecimal digit, or -1 if it is
+     * not one.  Unlike Character.digit, only ASCII digits are accepted,
+     * so that escapes made of fullwidth digits are rejected rather than
+     * decoded.
+     */
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    private static IllegalArgumentException invalidEscape(String s, int start,
+                                                          int end) {
+        String errMsg = lStrings.getString("err.invalid_escape");
+        Object[] errArgs = new Object[1];
+        errArgs[0] = s.substring(start, end);
+        errMsg = MessageFormat.format(errMsg, errArgs);
+        return new IllegalArgumentException(errMsg);
+    }
+
+    /**
+     * Encodes a component in UTF-8, appending the result to the given
+     * <code>StringBuilder</code>.
+     *
+     * @param s         the component to encode
+     *
+     * @param component the kind of component
+     *
+     * @param out       the builder to append the encoded component to
+     *
+     * @return <code>out</code>
+     */
+    public static StringBuilder encode(CharSequence s, Component component,
+                                       StringBuilder out) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (component.isLiteral(c)) {
+                out.append(c);
+            } else if (c == ' ' && component.plusIsSpace) {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendEscape(out, c);
+            } else {
+                int cp = Character.codePointAt(s, i);
+                if (Character.isSupplementaryCodePoint(cp)) {
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, replaced by '?' as
+                    // String.getBytes does, and encoded as ASCII
+                    if (component.isLiteral('?')) {
+                        out.append('?');
+                    } else {
+                        appendEscape(out, '?');
+                    }
+                    continue;
+                }
+                if (cp < 0x800) {
+                    appendEscape(out, 0xc0 | (cp >> 6));
+                } else {
+                    if (cp < 0x10000) {
+                        appendEscape(out, 0xe0 | (cp >> 12));
+                    } else {
+                        appendEscape(out, 0xf0 | (cp >> 18));
+                        appendEscape(out, 0x80 | ((cp >> 12) & 0x3f));
+                    }
+                    appendEscape(out, 0x80 | ((cp >> 6) & 0x3f));
+                }
+                appendEscape(out, 0x80 | (cp & 0x3f));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Encodes a component in UTF-8, writing the result, which consists
+     * of ASCII characters only, to the given <code>ByteBuffer</code>.
+     *
+     * @param s         the component to encode
+     *
+     * @param component the kind of component
+     *
+     * @param out       the buffer to write the encoded component to
+     *
+     * @return <code>out</code>
+     *
+     * @throws java.nio.BufferOverflowException if the buffer does not
+     *  have enough space remaining; some bytes may have been written
+     *
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only
+     */
+    public static ByteBuffer encode(CharSequence s, Component component,
+                                    ByteBuffer out) {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (component.isLiteral(c)) {
+                out.put((byte) c);
+            } else if (c == ' ' && component.plusIsSpace) {
+                out.put((byte) '+');
+            } else if (c < 0x80) {
+                putEscape(out, c);
+            } else {
+                int cp = Character.codePointAt(s, i);
+                if (Character.isSupplementaryCodePoint(cp)) {
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, replaced by '?' as
+                    // String.getBytes does, and encoded as ASCII
+                    if (component.isLiteral('?')) {
+                        out.put((byte) '?');
+                    } else {
+                        putEscape(out, '?');
+                    }
+                    continue;
+                }
+                if (cp < 0x800) {
+                    putEscape(out, 0xc0 | (cp >> 6));
+                } else {
+                    if (cp < 0x10000) {
+                        putEscape(out, 0xe0 | (cp >> 12));
+                    } else {
+                        putEscape(out, 0xf0 | (cp >> 18));
+                        putEscape(out, 0x80 | ((cp >> 12) & 0x3f));
+                    }
+                    putEscape(out, 0x80 | ((cp >> 6) & 0x3f));
+                }
+                putEscape(out, 0x80 | (cp & 0x3f));
+            }
+        }
+        return out;
+    }
+
+    private static void appendEscape(StringBuilder out, int b) {
+        out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+    }
+
+    private static void putEscape(ByteBuffer out, int b) {
+        out.put((byte) '%').put((byte) HEX[(b >> 4) & 0xf])
+           .put((byte) HEX[b & 0xf]);
+    }
+}